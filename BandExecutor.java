@@ -0,0 +1,210 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that runs an operation over the rows of a picture on several
+ * threads at once.  The rows are split into bands (runs of whole rows)
+ * and the bands are processed on a ForkJoinPool.  Pictures smaller than
+ * the threshold are done on the calling thread instead, since splitting
+ * them up costs more than it saves.
+ *
+ * Each band must only change pixels in its own rows, and must not
+ * depend on the order the bands run in.  Then the result is exactly
+ * the same as doing all the rows in order on one thread.
+ */
+public class BandExecutor
+{
+
+  /////////////////////////// inner types ///////////////////////////////
+
+  /**
+   * Interface for an operation that works on a band of rows
+   */
+  public interface BandTask
+  {
+    /**
+     * Method to process the rows from startRow up to (not including)
+     * endRow
+     * @param startRow the first row in the band
+     * @param endRow one past the last row in the band
+     */
+    public void processRows(int startRow, int endRow);
+  }
+
+  /**
+   * Fork/join action that splits its rows in half until they are
+   * small enough to process
+   */
+  private static class Band extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private BandTask task;
+    private int startRow;
+    private int endRow;
+    private int bandRows;
+
+    private Band(BandTask task, int startRow, int endRow, int bandRows)
+    {
+      this.task = task;
+      this.startRow = startRow;
+      this.endRow = endRow;
+      this.bandRows = bandRows;
+    }
+
+    protected void compute()
+    {
+      if (endRow - startRow <= bandRows)
+        task.processRows(startRow,endRow);
+      else
+      {
+        int middle = (startRow + endRow) >>> 1;
+        invokeAll(new Band(task,startRow,middle,bandRows),
+                  new Band(task,middle,endRow,bandRows));
+      }
+    }
+  }
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the smallest picture (in pixels) that is worth splitting up */
+  public static final int DEFAULT_THRESHOLD = 1 << 16;
+
+  /** the executor this class makes for the picture methods */
+  private static final BandExecutor BUILT_IN_EXECUTOR =
+    new BandExecutor(Runtime.getRuntime().availableProcessors(),
+                     DEFAULT_THRESHOLD);
+
+  /** the executor used by the picture methods */
+  private static volatile BandExecutor defaultExecutor = BUILT_IN_EXECUTOR;
+
+  /** the pool the bands run on (null when parallelism is 1) */
+  private ForkJoinPool pool;
+
+  /** the number of threads to use */
+  private int parallelism;
+
+  /** pictures with fewer pixels than this are done on one thread */
+  private int threshold;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the number of threads to use and the
+   * smallest number of pixels worth splitting up
+   * @param parallelism the number of threads to use (1 means always
+   * use the calling thread)
+   * @param threshold pictures with fewer pixels than this are done on
+   * the calling thread
+   */
+  public BandExecutor(int parallelism, int threshold)
+  {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    this.parallelism = parallelism;
+    this.threshold = Math.max(1,threshold);
+    if (parallelism > 1)
+      this.pool = new ForkJoinPool(parallelism);
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to get the executor that the picture methods use
+   * @return the default executor
+   */
+  public static BandExecutor getDefault() { return defaultExecutor; }
+
+  /**
+   * Method to change the executor that the picture methods use.
+   * Use new BandExecutor(1,0) to make everything run on one thread.
+   * If the executor being replaced is the one this class made, its
+   * threads are shut down (bands already running still finish).
+   * @param executor the new default executor
+   */
+  public static synchronized void setDefault(BandExecutor executor)
+  {
+    BandExecutor old = defaultExecutor;
+    defaultExecutor = executor;
+    if (old == BUILT_IN_EXECUTOR && executor != old && old.pool != null)
+      old.pool.shutdown();
+  }
+
+  /**
+   * Method to get the number of threads this executor uses
+   * @return the parallelism level
+   */
+  public int getParallelism() { return parallelism; }
+
+  /**
+   * Method to get the smallest picture (in pixels) that is split up
+   * @return the threshold
+   */
+  public int getThreshold() { return threshold; }
+
+  /**
+   * Method to run the task over all of the rows of a picture
+   * @param picture the picture whose rows are to be processed
+   * @param task the task to run on each band of rows
+   */
+  public void forEachBand(DigitalPicture picture, BandTask task)
+  {
+    forEachBand(picture.getWidth(),picture.getHeight(),task);
+  }
+
+  /**
+   * Method to run the task over the given number of rows.  If the pool
+   * has been shut down (see setDefault) the rows are done on the
+   * calling thread.
+   * @param width the number of pixels in each row
+   * @param height the number of rows
+   * @param task the task to run on each band of rows
+   */
+  public void forEachBand(int width, int height, BandTask task)
+  {
+    long pixels = (long) width * height;
+    if (pool == null || pool.isShutdown() || height < 2 || pixels < threshold)
+    {
+      if (height > 0)
+        task.processRows(0,height);
+      return;
+    }
+
+    // use a few bands per thread so that uneven bands even out,
+    // but don't make any band smaller than the threshold
+    int minRows = Math.min(height, threshold / Math.max(1,width));
+    int bandRows = Math.max(Math.max(1,minRows),
+                            (height + parallelism * 4 - 1) / (parallelism * 4));
+    pool.invoke(new Band(task,0,height,bandRows));
+  }
+
+  /**
+   * Method to run the task once for each of a number of separate items
+   * (like whole pictures), with each item as its own band.  The items
+   * are run on the pool however few there are, since each one is
+   * expected to be a lot of work.
+   * @param count the number of items
+   * @param task the task to run; its rows are the item indexes
+   */
+  public void forEachItem(int count, BandTask task)
+  {
+    if (pool == null || pool.isShutdown() || count < 2)
+    {
+      if (count > 0)
+        task.processRows(0,count);
+      return;
+    }
+    pool.invoke(new Band(task,0,count,1));
+  }
+
+  /**
+   * Method to return a string with information about this executor
+   * @return a string with information about this executor
+   */
+  public String toString()
+  {
+    return "BandExecutor parallelism " + parallelism +
+      " threshold " + threshold;
+  }
+
+}
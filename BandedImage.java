@@ -0,0 +1,254 @@
+import javax.imageio.ImageIO;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+
+/**
+ * Class for an image that is made a band of rows at a time, when an
+ * encoder asks for the rows.  The PNG, TIFF, and BMP writers ask for
+ * one row at a time in order, and the last band made is kept, so each
+ * band is only made once and only about one band is in memory.  This
+ * lets pictures that don't fit in memory be written to a file (see
+ * StegoPipeline and TiledPicture).
+ */
+public class BandedImage implements RenderedImage
+{
+
+  /////////////////////////// inner types ///////////////////////////////
+
+  /**
+   * Interface for something that makes the bands
+   */
+  public interface BandSource
+  {
+    /**
+     * Method to make one band
+     * @param startRow the first row of the band
+     * @param rows the number of rows in the band
+     * @return an int packed picture (TYPE_INT_RGB, or TYPE_INT_ARGB if
+     * the image has alpha) with the rows of the band
+     * @throws IOException if the rows can't be read
+     */
+    public Picture getBand(int startRow, int rows) throws IOException;
+  }
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the width of the image */
+  private int width;
+
+  /** the height of the image */
+  private int height;
+
+  /** the number of rows in each band (the last band can be smaller) */
+  private int bandRows;
+
+  /** true if the bands have alpha */
+  private boolean alpha;
+
+  /** the color model of the bands */
+  private ColorModel colorModel;
+
+  /** the sample model of a whole band */
+  private SampleModel sampleModel;
+
+  /** what makes the bands */
+  private BandSource source;
+
+  /** the index of the band that was made last (-1 for none) */
+  private int bandIndex = -1;
+
+  /** the band that was made last */
+  private Picture band;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the size of the image and the source of
+   * the bands
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param bandRows the number of rows in each band
+   * @param alpha true if the bands have alpha
+   * @param source what makes the bands
+   */
+  public BandedImage(int width, int height, int bandRows, boolean alpha,
+                     BandSource source)
+  {
+    this.width = width;
+    this.height = height;
+    this.bandRows = Math.max(1,Math.min(bandRows,height));
+    this.alpha = alpha;
+    this.source = source;
+    BufferedImage model = new BufferedImage(1,1,alpha ? BufferedImage.TYPE_INT_ARGB
+                                                       : BufferedImage.TYPE_INT_RGB);
+    this.colorModel = model.getColorModel();
+    this.sampleModel = model.getSampleModel().createCompatibleSampleModel(width,this.bandRows);
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to write the image to a file a band at a time.  The
+   * extension of the file name picks the format.
+   * @param file the file to write
+   * @throws IOException if the file can't be written or a band can't
+   * be made
+   */
+  public void write(File file) throws IOException
+  {
+    String name = file.getName();
+    int posDot = name.lastIndexOf('.');
+    String extension = (posDot >= 0) ? name.substring(posDot + 1) : "";
+
+    // raw files are written a band at a time without an encoder
+    if (extension.equalsIgnoreCase(RawImageFile.EXTENSION))
+    {
+      // into a new file, since the source may be mapped from the old one
+      FileReplacer.replace(file,temp -> {
+        try (FileChannel channel = RawImageFile.create(temp,width,height,alpha))
+        {
+          for (int startRow = 0; startRow < height; startRow += bandRows)
+          {
+            Picture rows = source.getBand(startRow,Math.min(bandRows,height - startRow));
+            RawImageFile.writeRows(channel,rows,0,rows.getHeight());
+          }
+        }
+      });
+      return;
+    }
+
+    try
+    {
+      if (extension.equalsIgnoreCase("png"))
+        PngWriter.getDefault().write(this,file);
+      else if (!ImageIO.write(this,extension,file))
+        throw new IOException("no writer for " + file);
+    }
+    catch (UncheckedIOException ex)
+    {
+      throw ex.getCause();
+    }
+  }
+
+  /**
+   * Method to get a band, made by the source if it isn't the one that
+   * was made last
+   * @param index the index of the band
+   * @return the band
+   */
+  private synchronized Picture getBand(int index)
+  {
+    if (index != bandIndex)
+    {
+      band = null;
+      try
+      {
+        int startRow = index * bandRows;
+        band = source.getBand(startRow,Math.min(bandRows,height - startRow));
+        bandIndex = index;
+      }
+      catch (IOException ex)
+      {
+        throw new UncheckedIOException(ex);
+      }
+    }
+    return band;
+  }
+
+  public Vector<RenderedImage> getSources() { return null; }
+  public Object getProperty(String name) { return Image.UndefinedProperty; }
+  public String[] getPropertyNames() { return null; }
+  public ColorModel getColorModel() { return colorModel; }
+  public SampleModel getSampleModel() { return sampleModel; }
+  public int getWidth() { return width; }
+  public int getHeight() { return height; }
+  public int getMinX() { return 0; }
+  public int getMinY() { return 0; }
+  public int getNumXTiles() { return 1; }
+  public int getNumYTiles() { return (height + bandRows - 1) / bandRows; }
+  public int getMinTileX() { return 0; }
+  public int getMinTileY() { return 0; }
+  public int getTileWidth() { return width; }
+  public int getTileHeight() { return bandRows; }
+  public int getTileGridXOffset() { return 0; }
+  public int getTileGridYOffset() { return 0; }
+
+  /**
+   * Method to get one band as a raster
+   * @param tileX the tile column (always 0)
+   * @param tileY the band index
+   * @return the band's rows
+   */
+  public Raster getTile(int tileX, int tileY)
+  {
+    return getData(new Rectangle(0,tileY * bandRows,width,bandRows));
+  }
+
+  /**
+   * Method to get the whole image as a raster (which needs it all in
+   * memory)
+   * @return a raster with all of the rows
+   */
+  public Raster getData()
+  {
+    return getData(new Rectangle(0,0,width,height));
+  }
+
+  /**
+   * Method to get part of the image as a raster.  Rows that are all in
+   * one band are shared with the band instead of copied.
+   * @param rect the part to get
+   * @return a raster with those pixels
+   */
+  public Raster getData(Rectangle rect)
+  {
+    Rectangle inside = rect.intersection(new Rectangle(0,0,width,height));
+    int first = inside.y / bandRows;
+    int last = (inside.y + inside.height - 1) / bandRows;
+    if (first == last)
+    {
+      WritableRaster raster = getBand(first).getBufferedImage().getRaster();
+      return raster.createChild(inside.x,inside.y - first * bandRows,
+                                inside.width,inside.height,
+                                inside.x,inside.y,null);
+    }
+    SampleModel model = sampleModel.createCompatibleSampleModel(inside.width,inside.height);
+    return copyData(Raster.createWritableRaster(model,inside.getLocation()));
+  }
+
+  /**
+   * Method to copy part of the image into a raster
+   * @param raster the raster to fill (null for a new one with the
+   * whole image)
+   * @return the filled raster
+   */
+  public WritableRaster copyData(WritableRaster raster)
+  {
+    if (raster == null)
+      raster = Raster.createWritableRaster(sampleModel.createCompatibleSampleModel(width,height),
+                                           null);
+    Rectangle inside = raster.getBounds().intersection(new Rectangle(0,0,width,height));
+    if (inside.isEmpty())
+      return raster;
+    int first = inside.y / bandRows;
+    int last = (inside.y + inside.height - 1) / bandRows;
+    for (int index = first; index <= last; index++)
+    {
+      Raster bandRaster = getBand(index).getBufferedImage().getRaster();
+      raster.setRect(0,index * bandRows,bandRaster);
+    }
+    return raster;
+  }
+
+}
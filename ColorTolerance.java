@@ -0,0 +1,163 @@
+/**
+ * Class that says how far apart two colors can be and still count as
+ * the same, for comparing pictures that have been through a lossy
+ * step (like saving as a JPEG).  There are two kinds of tolerance:
+ * <ul>
+ * <li>per channel: the colors are different if red, green, or blue
+ * changed by more than the number of levels</li>
+ * <li>euclidean: the colors are different if the distance between
+ * them (like Pixel.colorDistance) is more than the distance</li>
+ * </ul>
+ * The euclidean test compares squared distances as ints, so no square
+ * root is taken.  The kernel works on runs of packed pixel values
+ * without branches, so the JIT can turn it into vector instructions.
+ */
+public class ColorTolerance
+{
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the tolerance for exact comparison (no change allowed) */
+  public static final ColorTolerance EXACT = new ColorTolerance(0,false);
+
+  /** the number of levels (or the distance) that is allowed */
+  private int levels;
+
+  /** the square of the allowed distance */
+  private int levels2;
+
+  /** true for a euclidean distance, false for per channel */
+  private boolean euclidean;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the tolerance and its kind
+   * @param levels the allowed change (0 or more)
+   * @param euclidean true for a euclidean distance
+   */
+  private ColorTolerance(int levels, boolean euclidean)
+  {
+    if (levels < 0)
+      throw new IllegalArgumentException("tolerance can't be negative: " + levels);
+    this.levels = Math.min(levels,1 << 10);
+    this.levels2 = this.levels * this.levels;
+    this.euclidean = euclidean;
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to make a tolerance that allows each channel to change by up
+   * to some number of levels
+   * @param levels the largest change allowed in red, green, or blue
+   * @return the tolerance
+   */
+  public static ColorTolerance perChannel(int levels)
+  {
+    return new ColorTolerance(levels,false);
+  }
+
+  /**
+   * Method to make a tolerance that allows the color to move up to a
+   * distance (see Pixel.colorDistance)
+   * @param distance the largest distance allowed
+   * @return the tolerance
+   */
+  public static ColorTolerance euclidean(int distance)
+  {
+    return new ColorTolerance(distance,true);
+  }
+
+  /**
+   * Method to get the allowed change
+   * @return the number of levels or the distance
+   */
+  public int getLevels() { return levels; }
+
+  /**
+   * Method to tell if this is a euclidean tolerance
+   * @return true for euclidean, false for per channel
+   */
+  public boolean isEuclidean() { return euclidean; }
+
+  /**
+   * Method to tell if two colors are different (alpha is ignored)
+   * @param rgb1 the first packed color
+   * @param rgb2 the second packed color
+   * @return true if the colors are farther apart than allowed
+   */
+  public boolean isDifferent(int rgb1, int rgb2)
+  {
+    return different(rgb1,rgb2) != 0;
+  }
+
+  /**
+   * Method to mark the pixels in two runs of packed pixel values that
+   * are farther apart than allowed.  All three arrays use the same
+   * indexes (so the JIT can vectorize the loop).
+   * @param a the first pixel values
+   * @param b the second pixel values
+   * @param from the index of the first value to compare
+   * @param to one past the index of the last value to compare
+   * @param flags the array to put the results in (1 if different, else
+   * 0) at the same indexes
+   */
+  public void markDifferent(int[] a, int[] b, int from, int to, int[] flags)
+  {
+    if (euclidean)
+    {
+      int limit = levels2;
+      for (int i = from; i < to; i++)
+      {
+        int p = a[i];
+        int q = b[i];
+        int red = ((p >> 16) & 0xff) - ((q >> 16) & 0xff);
+        int green = ((p >> 8) & 0xff) - ((q >> 8) & 0xff);
+        int blue = (p & 0xff) - (q & 0xff);
+        flags[i] = (limit - (red * red + green * green + blue * blue)) >>> 31;
+      }
+    }
+    else
+    {
+      int limit = levels;
+      for (int i = from; i < to; i++)
+      {
+        int p = a[i];
+        int q = b[i];
+        int red = Math.abs(((p >> 16) & 0xff) - ((q >> 16) & 0xff));
+        int green = Math.abs(((p >> 8) & 0xff) - ((q >> 8) & 0xff));
+        int blue = Math.abs((p & 0xff) - (q & 0xff));
+        flags[i] = ((limit - red) | (limit - green) | (limit - blue)) >>> 31;
+      }
+    }
+  }
+
+  /**
+   * Method to test two colors the same way markDifferent does
+   * @param p the first packed color
+   * @param q the second packed color
+   * @return 1 if different, else 0
+   */
+  private int different(int p, int q)
+  {
+    int red = ((p >> 16) & 0xff) - ((q >> 16) & 0xff);
+    int green = ((p >> 8) & 0xff) - ((q >> 8) & 0xff);
+    int blue = (p & 0xff) - (q & 0xff);
+    if (euclidean)
+      return (levels2 - (red * red + green * green + blue * blue)) >>> 31;
+    return ((levels - Math.abs(red)) | (levels - Math.abs(green)) |
+            (levels - Math.abs(blue))) >>> 31;
+  }
+
+  /**
+   * Method to return a string with information about this tolerance
+   * @return a string with the kind and amount of tolerance
+   */
+  public String toString()
+  {
+    return "ColorTolerance " + (euclidean ? "euclidean " : "per channel ") +
+      levels;
+  }
+
+}
@@ -0,0 +1,230 @@
+import java.security.SecureRandom;
+
+/**
+ * Class that holds 64-bit hashes of the colors in a picture.  The
+ * picture is split into square tiles and each tile gets its own hash,
+ * and a root hash is made from all of the tile hashes.  Two pictures
+ * with different root hashes are sure to have different colors
+ * somewhere, and a tile with the same hash in both is almost sure to
+ * be the same.
+ *
+ * Each pixel is mixed with its place in the tile and a key before it
+ * is added in, so the hash isn't linear in the pixels (a pattern and
+ * the same pattern with its two colors swapped don't cancel out).
+ * The key is picked at random each time the program runs, so tiles
+ * with the same hash can't be made ahead of time, and two different
+ * tiles get the same hash with a chance of about 1 in 2 to the 64th.
+ * This also means the hashes change from run to run, so don't save
+ * them.
+ *
+ * Only the red, green, and blue of each pixel are hashed, so two
+ * pixels are the same here when Steganography.isSame would say so.
+ * Use SimplePicture.getContentHash to get the hashes for a picture,
+ * since it keeps them until the picture changes.
+ */
+public class ContentHash
+{
+
+  /////////////////////////// constants ////////////////////////////////
+
+  /** the width and height of a tile (the last row and column of tiles
+   * can be smaller).  This is 64 so that a tile column lines up with
+   * one word of a DiffMask row. */
+  public static final int TILE_SIZE = 64;
+
+  /** an odd 64-bit constant used to mix in each pixel */
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /** the random key each pixel is mixed with (see the class comment) */
+  private static final long KEY = new SecureRandom().nextLong();
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** the number of tiles in each row of tiles */
+  private int tilesAcross;
+
+  /** the number of rows of tiles */
+  private int tilesDown;
+
+  /** the hash of each tile, row by row */
+  private long[] tileHashes;
+
+  /** the hash of all the tile hashes */
+  private long rootHash;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that hashes the passed picture.  Each row of tiles is
+   * hashed as a separate task on the default BandExecutor.
+   * @param picture the picture to hash
+   */
+  public ContentHash(DigitalPicture picture)
+  {
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    this.tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+    this.tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+    this.tileHashes = new long[tilesAcross * tilesDown];
+
+    BandExecutor.getDefault().forEachItem(tilesDown, (firstTileRow, endTileRow) -> {
+      int[] pixels = new int[width];
+      for (int tileRow = firstTileRow; tileRow < endTileRow; tileRow++)
+        hashTileRow(picture,tileRow,pixels);
+    });
+
+    long root = mix(((long) width << 32) | height);
+    for (long tileHash : tileHashes)
+      root = (root ^ tileHash) * MULTIPLIER;
+    this.rootHash = mix(root);
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to hash all of the tiles in one row of tiles
+   * @param picture the picture to hash
+   * @param tileRow the index of the row of tiles
+   * @param pixels a buffer at least as long as a row
+   */
+  private void hashTileRow(DigitalPicture picture, int tileRow, int[] pixels)
+  {
+    int base = tileRow * tilesAcross;
+    int startRow = tileRow * TILE_SIZE;
+    int endRow = Math.min(height,startRow + TILE_SIZE);
+    long[] hashes = new long[tilesAcross];
+    for (int row = startRow; row < endRow; row++)
+    {
+      picture.getBasicRow(row,pixels);
+      long rowKey = KEY ^ ((long) (row - startRow) << 40);
+      for (int tile = 0; tile < tilesAcross; tile++)
+      {
+        long hash = hashes[tile];
+        int start = tile * TILE_SIZE;
+        int end = Math.min(width,start + TILE_SIZE);
+        for (int col = start; col < end; col++)
+          hash = (hash + mix(rowKey ^ ((long) (col - start) << 24) ^
+                             (pixels[col] & 0xffffff))) * MULTIPLIER;
+        hashes[tile] = hash;
+      }
+    }
+    for (int tile = 0; tile < tilesAcross; tile++)
+      tileHashes[base + tile] = mix(hashes[tile] ^ (base + tile));
+  }
+
+  /**
+   * Method to spread the bits of a hash so that every input bit
+   * changes about half of the output bits
+   * @param hash the hash to mix
+   * @return the mixed hash
+   */
+  private static long mix(long hash)
+  {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Method to get the width of the picture that was hashed
+   * @return the width
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture that was hashed
+   * @return the height
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the number of tiles in each row of tiles
+   * @return the number of tile columns
+   */
+  public int getTilesAcross() { return tilesAcross; }
+
+  /**
+   * Method to get the number of rows of tiles
+   * @return the number of tile rows
+   */
+  public int getTilesDown() { return tilesDown; }
+
+  /**
+   * Method to get the hash of one tile
+   * @param tileX the tile column (x / TILE_SIZE)
+   * @param tileY the tile row (y / TILE_SIZE)
+   * @return the tile's hash
+   */
+  public long getTileHash(int tileX, int tileY)
+  {
+    if (tileX < 0 || tileX >= tilesAcross)
+      throw new ArrayIndexOutOfBoundsException("Tile out of bounds!");
+    return tileHashes[tileY * tilesAcross + tileX];
+  }
+
+  /**
+   * Method to get the hash of the whole picture
+   * @return the root hash
+   */
+  public long getRootHash() { return rootHash; }
+
+  /**
+   * Method to tell if a tile has the same hash in both pictures
+   * @param other the hashes of a picture of the same size
+   * @param tileX the tile column
+   * @param tileY the tile row
+   * @return true if the tile hashes match
+   */
+  public boolean sameTile(ContentHash other, int tileX, int tileY)
+  {
+    return getTileHash(tileX,tileY) == other.getTileHash(tileX,tileY);
+  }
+
+  /**
+   * Method to tell if every tile in a row of tiles has the same hash in
+   * both pictures
+   * @param other the hashes of a picture of the same size
+   * @param tileY the tile row
+   * @return true if all the tile hashes in the row match
+   */
+  public boolean sameTileRow(ContentHash other, int tileY)
+  {
+    int base = tileY * tilesAcross;
+    for (int i = base; i < base + tilesAcross; i++)
+      if (tileHashes[i] != other.tileHashes[i])
+        return false;
+    return true;
+  }
+
+  /**
+   * Method to tell if another picture may have the same colors.  If
+   * this returns false the colors are sure to be different.
+   * @param other the hashes of the other picture
+   * @return true if the size and root hash match
+   */
+  public boolean mayBeSame(ContentHash other)
+  {
+    return width == other.width && height == other.height &&
+      rootHash == other.rootHash;
+  }
+
+  /**
+   * Method to return a string with information about these hashes
+   * @return a string with the size, tile count, and root hash
+   */
+  public String toString()
+  {
+    return "ContentHash width " + width + " height " + height + " tiles " +
+      tilesAcross + "x" + tilesDown + " root " + Long.toHexString(rootHash);
+  }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Class that tests ContentHash.  There is no test framework in this
+ * project, so run it like any other class:
+ * <pre>
+ *   java ContentHashTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class ContentHashTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to make a pair of pictures in a Thue-Morse pattern of two
+   * colors, with the colors swapped in the second one.  They differ at
+   * every pixel, but a hash that just adds up the pixels times powers
+   * of an odd number gives them the same hash.
+   * @param width the width of the pictures
+   * @param height the height of the pictures
+   * @return the two pictures
+   */
+  static Picture[] makeSwappedPair(int width, int height)
+  {
+    Picture p1 = new Picture(height,width);
+    Picture p2 = new Picture(height,width);
+    int c1 = 0x102030;
+    int c2 = 0x405060;
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+      {
+        // the place in the tile, in the order the tile is hashed
+        int i = (y % ContentHash.TILE_SIZE) * ContentHash.TILE_SIZE +
+          (x % ContentHash.TILE_SIZE);
+        boolean odd = Integer.bitCount(i) % 2 == 1;
+        p1.setBasicPixel(x,y,odd ? c1 : c2);
+        p2.setBasicPixel(x,y,odd ? c2 : c1);
+      }
+    return new Picture[] {p1, p2};
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that swapping the two colors of a pattern changes
+   * the tile and root hashes
+   */
+  public static void testSwappedColors()
+  {
+    Picture[] pair = makeSwappedPair(64,64);
+    ContentHash h1 = new ContentHash(pair[0]);
+    ContentHash h2 = new ContentHash(pair[1]);
+    check(!h1.sameTile(h2,0,0),"swapped colors gave the same tile hash");
+    check(!h1.mayBeSame(h2),"swapped colors gave the same root hash");
+  }
+
+  /**
+   * Method to test that one changed pixel changes only its own tile's
+   * hash
+   */
+  public static void testOnePixel()
+  {
+    Picture p1 = new Picture(150,200);
+    Picture p2 = new Picture(150,200);
+    p2.setBasicPixel(70,130,0x010000);
+    ContentHash h1 = new ContentHash(p1);
+    ContentHash h2 = new ContentHash(p2);
+    check(!h1.mayBeSame(h2),"the root hash didn't change");
+    for (int ty = 0; ty < h1.getTilesDown(); ty++)
+      for (int tx = 0; tx < h1.getTilesAcross(); tx++)
+        check(h1.sameTile(h2,tx,ty) == (tx != 1 || ty != 2),
+              "wrong tile hash for tile " + tx + "," + ty);
+  }
+
+  /**
+   * Method to test that alpha is left out of the hash and that the
+   * cached hash is replaced when the picture changes
+   */
+  public static void testCachedHash()
+  {
+    Picture p1 = new Picture(100,100);
+    Picture p2 = new Picture(p1);
+    check(p1.getContentHash().mayBeSame(p2.getContentHash()),
+          "a copy has a different hash");
+    p2.setBasicPixel(5,5,0xff000001);
+    check(!p1.getContentHash().mayBeSame(p2.getContentHash()),
+          "the cached hash wasn't replaced after a change");
+    p2.setBasicPixel(5,5,p1.getBasicPixel(5,5) & 0xffffff);
+    check(p1.getContentHash().mayBeSame(p2.getContentHash()),
+          "alpha changed the hash");
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   */
+  public static void main(String[] args)
+  {
+    testSwappedColors();
+    System.out.println("testSwappedColors passed");
+    testOnePixel();
+    System.out.println("testOnePixel passed");
+    testCachedHash();
+    System.out.println("testCachedHash passed");
+  }
+
+}
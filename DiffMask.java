@@ -0,0 +1,492 @@
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Class that marks a set of pixel locations in a picture, like the
+ * pixels that are different between two pictures.  It uses one bit per
+ * pixel packed into longs, so even a mask over a large picture is small
+ * and no object is made for each marked pixel.
+ *
+ * Each row starts on a new long, so different rows can be set from
+ * different threads at the same time.
+ */
+public class DiffMask
+{
+
+  /////////////////////////// inner types ///////////////////////////////
+
+  /**
+   * Interface for an operation to run on each marked location
+   */
+  public interface PointVisitor
+  {
+    /**
+     * Method to visit one marked location
+     * @param x the x (column) of the location
+     * @param y the y (row) of the location
+     */
+    public void visit(int x, int y);
+  }
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the width of the mask */
+  private int width;
+
+  /** the height of the mask */
+  private int height;
+
+  /** the number of longs used for each row */
+  private int wordsPerRow;
+
+  /** the bits, row by row (bit x % 64 of word x / 64 is column x) */
+  private long[] words;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the size of the mask.  No locations are
+   * marked to start with.
+   * @param width the width of the mask
+   * @param height the height of the mask
+   */
+  public DiffMask(int width, int height)
+  {
+    if (width < 0 || height < 0)
+      throw new IllegalArgumentException("bad mask size " + width + "x" + height);
+    this.width = width;
+    this.height = height;
+    this.wordsPerRow = (width + 63) >>> 6;
+    this.words = new long[Math.multiplyExact(wordsPerRow,height)];
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to get the width of the mask
+   * @return the width
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the mask
+   * @return the height
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the number of longs used for each row
+   * @return the number of words in a row
+   */
+  public int getWordsPerRow() { return wordsPerRow; }
+
+  /**
+   * Method to get the packed bits.  Row y uses the words from
+   * y * getWordsPerRow() on, and column x of the row is bit x % 64 of
+   * word x / 64.  Changes to the array change the mask.
+   * @return the array of bits
+   */
+  public long[] getWords() { return words; }
+
+  /**
+   * Method to tell if a location is marked
+   * @param x the x (column) of the location
+   * @param y the y (row) of the location
+   * @return true if the location is marked
+   */
+  public boolean get(int x, int y)
+  {
+    return (words[wordIndex(x,y)] & (1L << x)) != 0;
+  }
+
+  /**
+   * Method to mark a location
+   * @param x the x (column) of the location
+   * @param y the y (row) of the location
+   */
+  public void set(int x, int y)
+  {
+    words[wordIndex(x,y)] |= 1L << x;
+  }
+
+  /**
+   * Method to unmark a location
+   * @param x the x (column) of the location
+   * @param y the y (row) of the location
+   */
+  public void clear(int x, int y)
+  {
+    words[wordIndex(x,y)] &= ~(1L << x);
+  }
+
+  /**
+   * Method to get the index of the word that holds a location
+   * @param x the x (column) of the location
+   * @param y the y (row) of the location
+   * @return the index in the words array
+   */
+  private int wordIndex(int x, int y)
+  {
+    if (x < 0 || x >= width || y < 0 || y >= height)
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+    return y * wordsPerRow + (x >>> 6);
+  }
+
+  /**
+   * Method to mark the locations in a row where two rows of packed
+   * pixel values have different colors (alpha is ignored)
+   * @param y the row to mark
+   * @param a the first row of pixel values
+   * @param b the second row of pixel values
+   */
+  public void setDifferences(int y, int[] a, int[] b)
+  {
+    int base = y * wordsPerRow;
+    for (int w = 0; w < wordsPerRow; w++)
+    {
+      int start = w << 6;
+      int end = Math.min(width, start + 64);
+      long bits = 0;
+      for (int x = start; x < end; x++)
+        if (((a[x] ^ b[x]) & 0xffffff) != 0)
+          bits |= 1L << x;
+      words[base + w] = bits;
+    }
+  }
+
+  /**
+   * Method to mark the locations in part of a row where two rows of
+   * packed pixel values have different colors (alpha is ignored).  The
+   * rest of the row is left as it is.
+   * @param y the row to mark
+   * @param a the first row of pixel values
+   * @param b the second row of pixel values
+   * @param from the first column to compare
+   * @param to one past the last column to compare
+   */
+  public void setDifferences(int y, int[] a, int[] b, int from, int to)
+  {
+    int base = y * wordsPerRow;
+    for (int x = from; x < to; )
+    {
+      int w = x >>> 6;
+      int end = Math.min(to, (w + 1) << 6);
+      long bits = 0;
+      long range = 0;
+      for (; x < end; x++)
+      {
+        range |= 1L << x;
+        if (((a[x] ^ b[x]) & 0xffffff) != 0)
+          bits |= 1L << x;
+      }
+      words[base + w] = (words[base + w] & ~range) | bits;
+    }
+  }
+
+  /**
+   * Method to mark the locations in part of a row from an array of
+   * flags (like the ones ColorTolerance.markDifferent makes).  The rest
+   * of the row is left as it is.
+   * @param y the row to mark
+   * @param flags 1 for each location to mark and 0 for each to unmark,
+   * with flags[x] for column x
+   * @param from the first column to set
+   * @param to one past the last column to set
+   */
+  public void setFlags(int y, int[] flags, int from, int to)
+  {
+    int base = y * wordsPerRow;
+    for (int x = from; x < to; )
+    {
+      int w = x >>> 6;
+      int end = Math.min(to, (w + 1) << 6);
+      long bits = 0;
+      long range = 0;
+      for (; x < end; x++)
+      {
+        range |= 1L << x;
+        bits |= (long) (flags[x] & 1) << x;
+      }
+      words[base + w] = (words[base + w] & ~range) | bits;
+    }
+  }
+
+  /**
+   * Method to get the number of marked locations
+   * @return the number of marked locations
+   */
+  public long cardinality()
+  {
+    long count = 0;
+    for (long word : words)
+      count += Long.bitCount(word);
+    return count;
+  }
+
+  /**
+   * Method to tell if no locations are marked
+   * @return true if the mask is empty
+   */
+  public boolean isEmpty()
+  {
+    for (long word : words)
+      if (word != 0)
+        return false;
+    return true;
+  }
+
+  /**
+   * Method to tell if any location in a row is marked
+   * @param y the row to check
+   * @return true if the row has a marked location
+   */
+  public boolean isRowEmpty(int y)
+  {
+    int base = y * wordsPerRow;
+    for (int w = 0; w < wordsPerRow; w++)
+      if (words[base + w] != 0)
+        return false;
+    return true;
+  }
+
+  /**
+   * Method to find the next marked location in a row
+   * @param x the column to start looking at
+   * @param y the row to look in
+   * @return the column of the first marked location at or after x, or
+   * -1 if there are no more in the row
+   */
+  public int nextSetInRow(int x, int y)
+  {
+    if (x >= width)
+      return -1;
+    int base = y * wordsPerRow;
+    int w = x >>> 6;
+    long bits = words[base + w] & (-1L << x);
+    while (true)
+    {
+      if (bits != 0)
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+      if (++w == wordsPerRow)
+        return -1;
+      bits = words[base + w];
+    }
+  }
+
+  /**
+   * Method to find the next unmarked location in a row
+   * @param x the column to start looking at
+   * @param y the row to look in
+   * @return the column of the first unmarked location at or after x,
+   * or the width if the rest of the row is marked
+   */
+  public int nextClearInRow(int x, int y)
+  {
+    if (x >= width)
+      return width;
+    int base = y * wordsPerRow;
+    int w = x >>> 6;
+    long bits = ~words[base + w] & (-1L << x);
+    while (true)
+    {
+      if (bits != 0)
+        return Math.min(width, (w << 6) + Long.numberOfTrailingZeros(bits));
+      if (++w == wordsPerRow)
+        return width;
+      bits = ~words[base + w];
+    }
+  }
+
+  /**
+   * Method to run an operation on each marked location, row by row
+   * from the top left
+   * @param visitor the operation to run
+   */
+  public void forEach(PointVisitor visitor)
+  {
+    for (int y = 0; y < height; y++)
+    {
+      int base = y * wordsPerRow;
+      for (int w = 0; w < wordsPerRow; w++)
+      {
+        long bits = words[base + w];
+        while (bits != 0)
+        {
+          visitor.visit((w << 6) + Long.numberOfTrailingZeros(bits),y);
+          bits &= bits - 1;
+        }
+      }
+    }
+  }
+
+  /**
+   * Method to get the smallest rectangle that holds all the marked
+   * locations
+   * @return the bounding box, or null if the mask is empty
+   */
+  public Rectangle getBoundingBox()
+  {
+    int minX = width, maxX = -1, minY = -1, maxY = -1;
+    for (int y = 0; y < height; y++)
+    {
+      int base = y * wordsPerRow;
+      for (int w = 0; w < wordsPerRow; w++)
+      {
+        long bits = words[base + w];
+        if (bits == 0)
+          continue;
+        if (minY < 0)
+          minY = y;
+        maxY = y;
+        minX = Math.min(minX, (w << 6) + Long.numberOfTrailingZeros(bits));
+        maxX = Math.max(maxX, (w << 6) + 63 - Long.numberOfLeadingZeros(bits));
+      }
+    }
+    if (minY < 0)
+      return null;
+    return new Rectangle(minX,minY,maxX - minX + 1,maxY - minY + 1);
+  }
+
+  /**
+   * Method to find the separate regions of marked locations, where
+   * locations that touch (even at a corner) are in the same region
+   * @return the bounding box of each region, in order of the region's
+   * top row and then its left column
+   */
+  public ArrayList<Rectangle> findRegions()
+  {
+    return findRegions(true);
+  }
+
+  /**
+   * Method to find the separate regions of marked locations.  Each row
+   * is split into runs of marked locations, runs that touch a run in
+   * the row above are joined with union-find, and then the box of each
+   * joined set of runs is found.  The time taken grows with the size of
+   * the mask, not the number or shape of the regions.
+   * @param diagonal true if locations that only touch at a corner are
+   * in the same region
+   * @return the bounding box of each region, in order of the region's
+   * top row and then its left column
+   */
+  public ArrayList<Rectangle> findRegions(boolean diagonal)
+  {
+    int reach = diagonal ? 1 : 0;
+    int[] runStart = new int[64];
+    int[] runEnd = new int[64];
+    int[] runRow = new int[64];
+    int[] parent = new int[64];
+    int runs = 0;
+    int prevFirst = 0;
+    int prevEnd = 0;
+
+    for (int y = 0; y < height; y++)
+    {
+      int rowFirst = runs;
+      int p = prevFirst;
+      int x = nextSetInRow(0,y);
+      while (x >= 0)
+      {
+        int end = nextClearInRow(x,y);
+        if (runs == parent.length)
+        {
+          int size = runs * 2;
+          runStart = Arrays.copyOf(runStart,size);
+          runEnd = Arrays.copyOf(runEnd,size);
+          runRow = Arrays.copyOf(runRow,size);
+          parent = Arrays.copyOf(parent,size);
+        }
+        runStart[runs] = x;
+        runEnd[runs] = end;
+        runRow[runs] = y;
+        parent[runs] = runs;
+
+        // skip the runs above that end before this one can touch them
+        while (p < prevEnd && runEnd[p] + reach <= x)
+          p++;
+        // join with every run above that overlaps this one
+        for (int q = p; q < prevEnd && runStart[q] < end + reach; q++)
+          union(parent,q,runs);
+
+        runs++;
+        x = nextSetInRow(end,y);
+      }
+      prevFirst = rowFirst;
+      prevEnd = runs;
+    }
+
+    // work out the box of each set, in order of its first run
+    int[] boxOf = new int[runs];
+    ArrayList<int[]> boxes = new ArrayList<int[]>();
+    for (int i = 0; i < runs; i++)
+    {
+      int root = find(parent,i);
+      int[] box;
+      if (root == i)
+      {
+        boxOf[i] = boxes.size();
+        box = new int[] {runStart[i], runRow[i], runEnd[i], runRow[i]};
+        boxes.add(box);
+      }
+      else
+      {
+        boxOf[i] = boxOf[root];
+        box = boxes.get(boxOf[i]);
+        box[0] = Math.min(box[0],runStart[i]);
+        box[2] = Math.max(box[2],runEnd[i]);
+        box[3] = runRow[i];
+      }
+    }
+
+    ArrayList<Rectangle> regions = new ArrayList<Rectangle>(boxes.size());
+    for (int[] box : boxes)
+      regions.add(new Rectangle(box[0],box[1],box[2] - box[0],
+                                box[3] - box[1] + 1));
+    return regions;
+  }
+
+  /**
+   * Method to find the root of a set and shorten the path to it
+   * @param parent the parent of each run
+   * @param i the run to start at
+   * @return the root run of the set
+   */
+  private static int find(int[] parent, int i)
+  {
+    while (parent[i] != i)
+    {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * Method to join the sets of two runs.  The root is always the
+   * earlier run, so a set's root is its first run in row order.
+   * @param parent the parent of each run
+   * @param a one run
+   * @param b the other run
+   */
+  private static void union(int[] parent, int a, int b)
+  {
+    int rootA = find(parent,a);
+    int rootB = find(parent,b);
+    if (rootA < rootB)
+      parent[rootB] = rootA;
+    else if (rootB < rootA)
+      parent[rootA] = rootB;
+  }
+
+  /**
+   * Method to return a string with information about this mask
+   * @return a string with the size and number of marked locations
+   */
+  public String toString()
+  {
+    return "DiffMask width " + width + " height " + height +
+      " marked " + cardinality();
+  }
+
+}
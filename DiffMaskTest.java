@@ -0,0 +1,148 @@
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that tests finding the separate regions of a DiffMask and
+ * drawing a box around each one.  Run it like any other class:
+ * <pre>
+ *   java DiffMaskTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class DiffMaskTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to mark a rectangle of locations in a mask
+   * @param mask the mask to change
+   * @param x the x coordinate of the left side
+   * @param y the y coordinate of the top
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   */
+  private static void fill(DiffMask mask, int x, int y, int width, int height)
+  {
+    for (int row = y; row < y + height; row++)
+      for (int col = x; col < x + width; col++)
+        mask.set(col,row);
+  }
+
+  /**
+   * Method to make a mask with a few regions: a block with a location
+   * touching its corner, a U shape that crosses a word boundary (and is
+   * only joined at its bottom row), a run across a word boundary, and
+   * a location in the last corner
+   * @return the new mask
+   */
+  private static DiffMask makeMask()
+  {
+    DiffMask mask = new DiffMask(150,40);
+    fill(mask,2,1,3,3);
+    mask.set(5,4);
+    fill(mask,60,10,1,11);
+    fill(mask,70,10,1,11);
+    fill(mask,60,20,11,1);
+    fill(mask,62,30,5,1);
+    mask.set(149,39);
+    return mask;
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test the regions found with and without corners joining
+   * locations, and their order
+   */
+  public static void testRegions()
+  {
+    DiffMask mask = makeMask();
+    List<Rectangle> corners = Arrays.asList(new Rectangle(2,1,4,4),
+                                            new Rectangle(60,10,11,11),
+                                            new Rectangle(62,30,5,1),
+                                            new Rectangle(149,39,1,1));
+    check(mask.findRegions().equals(corners),"wrong regions " + mask.findRegions());
+    check(mask.findRegions(true).equals(corners),"findRegions(true) differs");
+
+    List<Rectangle> sides = Arrays.asList(new Rectangle(2,1,3,3),
+                                          new Rectangle(5,4,1,1),
+                                          new Rectangle(60,10,11,11),
+                                          new Rectangle(62,30,5,1),
+                                          new Rectangle(149,39,1,1));
+    check(mask.findRegions(false).equals(sides),"wrong regions " + mask.findRegions(false));
+    check(new DiffMask(80,20).findRegions().isEmpty(),"an empty mask had regions");
+  }
+
+  /**
+   * Method to test a checkerboard, which is one region when corners
+   * join locations and a region per location when they don't
+   */
+  public static void testCheckerboard()
+  {
+    DiffMask mask = new DiffMask(130,12);
+    for (int y = 0; y < 12; y++)
+      for (int x = y % 2; x < 130; x += 2)
+        mask.set(x,y);
+    check(mask.findRegions(true).equals(Arrays.asList(new Rectangle(0,0,130,12))),
+          "the checkerboard wasn't one region");
+    ArrayList<Rectangle> regions = mask.findRegions(false);
+    check(regions.size() == mask.cardinality(),"expected a region per location, not " +
+          regions.size());
+    for (int i = 1; i < regions.size(); i++)
+    {
+      Rectangle a = regions.get(i - 1);
+      Rectangle b = regions.get(i);
+      check(a.y < b.y || (a.y == b.y && a.x < b.x),"the regions are out of order");
+    }
+  }
+
+  /**
+   * Method to test drawing a box around each region
+   */
+  public static void testShowEachRegion()
+  {
+    Picture src = new Picture(new BufferedImage(150,40,BufferedImage.TYPE_INT_RGB));
+    int red = Color.RED.getRGB() & 0xffffff;
+    Picture boxes = Steganography.showDifferentArea(src,makeMask(),true);
+    check((boxes.getBasicPixel(2,1) & 0xffffff) == red &&
+          (boxes.getBasicPixel(5,4) & 0xffffff) == red &&
+          (boxes.getBasicPixel(70,20) & 0xffffff) == red,"a region wasn't boxed");
+    check((boxes.getBasicPixel(30,5) & 0xffffff) != red,"a box was drawn between regions");
+    check((src.getBasicPixel(2,1) & 0xffffff) != red,"the source was changed");
+
+    Picture one = Steganography.showDifferentArea(src,makeMask(),false);
+    check((one.getBasicPixel(30,1) & 0xffffff) == red,"the bounding box wasn't drawn");
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   */
+  public static void main(String[] args)
+  {
+    testRegions();
+    System.out.println("testRegions passed");
+    testCheckerboard();
+    System.out.println("testCheckerboard passed");
+    testShowEachRegion();
+    System.out.println("testShowEachRegion passed");
+  }
+
+}
@@ -0,0 +1,231 @@
+import java.awt.Rectangle;
+
+/**
+ * Class that holds statistics about the differences between two
+ * pictures of the same size: how many pixels have a different color,
+ * the box around them, and how much each color changed.  The
+ * statistics are worked out in one pass over the pixels, in parallel
+ * bands of rows, without keeping a list of the different pixels.
+ */
+public class DiffStats
+{
+
+  /////////////////////////// constants ////////////////////////////////
+
+  /** the channel index for red */
+  public static final int RED = 0;
+
+  /** the channel index for green */
+  public static final int GREEN = 1;
+
+  /** the channel index for blue */
+  public static final int BLUE = 2;
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the number of pixels compared */
+  private long pixelCount;
+
+  /** the number of pixels with a different color */
+  private long count;
+
+  /** the bounding box of the different pixels (min > max when empty) */
+  private int minX = Integer.MAX_VALUE;
+  private int minY = Integer.MAX_VALUE;
+  private int maxX = -1;
+  private int maxY = -1;
+
+  /** the sum of the absolute change in each channel */
+  private long[] sumDelta = new long[3];
+
+  /** the sum of the squared change in each channel */
+  private long[] sumSquaredDelta = new long[3];
+
+  /** the largest absolute change in each channel */
+  private int[] maxDelta = new int[3];
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor for empty statistics (used for each band)
+   */
+  private DiffStats()
+  {
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to compare two pictures of the same size in one pass
+   * @param p1 the first picture
+   * @param p2 the second picture
+   * @return the statistics about the differences
+   */
+  public static DiffStats compare(DigitalPicture p1, DigitalPicture p2)
+  {
+    int width = p1.getWidth();
+    int height = p1.getHeight();
+    if (width != p2.getWidth() || height != p2.getHeight())
+      throw new IllegalArgumentException("pictures must be the same size");
+
+    DiffStats total = new DiffStats();
+    total.pixelCount = (long) width * height;
+    BandExecutor.getDefault().forEachBand(p1, (startRow, endRow) -> {
+      DiffStats band = new DiffStats();
+      int[] a = new int[width];
+      int[] b = new int[width];
+      for (int row = startRow; row < endRow; row++)
+      {
+        p1.getBasicRow(row,a);
+        p2.getBasicRow(row,b);
+        band.addRow(row,a,b);
+      }
+      total.merge(band);
+    });
+    return total;
+  }
+
+  /**
+   * Method to add the differences in one row
+   * @param row the row index
+   * @param a the first row of packed pixel values
+   * @param b the second row of packed pixel values
+   */
+  private void addRow(int row, int[] a, int[] b)
+  {
+    int first = -1;
+    int last = -1;
+    long rowCount = 0;
+    for (int col = 0; col < a.length; col++)
+    {
+      int diff = (a[col] ^ b[col]) & 0xffffff;
+      if (diff == 0)
+        continue;
+      if (first < 0)
+        first = col;
+      last = col;
+      rowCount++;
+      addDelta(RED,Pixel.getRed(a[col]) - Pixel.getRed(b[col]));
+      addDelta(GREEN,Pixel.getGreen(a[col]) - Pixel.getGreen(b[col]));
+      addDelta(BLUE,Pixel.getBlue(a[col]) - Pixel.getBlue(b[col]));
+    }
+    if (first < 0)
+      return;
+    count += rowCount;
+    minX = Math.min(minX,first);
+    maxX = Math.max(maxX,last);
+    minY = Math.min(minY,row);
+    maxY = Math.max(maxY,row);
+  }
+
+  /**
+   * Method to add the change in one channel of one pixel
+   * @param channel the channel index
+   * @param delta the change in the channel
+   */
+  private void addDelta(int channel, int delta)
+  {
+    int abs = Math.abs(delta);
+    sumDelta[channel] += abs;
+    sumSquaredDelta[channel] += abs * abs;
+    if (abs > maxDelta[channel])
+      maxDelta[channel] = abs;
+  }
+
+  /**
+   * Method to add the statistics of a band to these
+   * @param band the statistics of one band of rows
+   */
+  private synchronized void merge(DiffStats band)
+  {
+    count += band.count;
+    minX = Math.min(minX,band.minX);
+    minY = Math.min(minY,band.minY);
+    maxX = Math.max(maxX,band.maxX);
+    maxY = Math.max(maxY,band.maxY);
+    for (int i = 0; i < 3; i++)
+    {
+      sumDelta[i] += band.sumDelta[i];
+      sumSquaredDelta[i] += band.sumSquaredDelta[i];
+      maxDelta[i] = Math.max(maxDelta[i],band.maxDelta[i]);
+    }
+  }
+
+  /**
+   * Method to get the number of pixels compared
+   * @return the number of pixels in each picture
+   */
+  public long getPixelCount() { return pixelCount; }
+
+  /**
+   * Method to get the number of pixels with a different color
+   * @return the number of different pixels
+   */
+  public long getCount() { return count; }
+
+  /**
+   * Method to tell if the pictures have the same colors
+   * @return true if no pixels are different
+   */
+  public boolean isEmpty() { return count == 0; }
+
+  /**
+   * Method to get the smallest rectangle that holds all the different
+   * pixels
+   * @return the bounding box, or null if there are no differences
+   */
+  public Rectangle getBoundingBox()
+  {
+    if (count == 0)
+      return null;
+    return new Rectangle(minX,minY,maxX - minX + 1,maxY - minY + 1);
+  }
+
+  /**
+   * Method to get the total absolute change in a channel
+   * @param channel RED, GREEN, or BLUE
+   * @return the sum of the absolute changes over all pixels
+   */
+  public long getSumDelta(int channel) { return sumDelta[channel]; }
+
+  /**
+   * Method to get the total squared change in a channel
+   * @param channel RED, GREEN, or BLUE
+   * @return the sum of the squared changes over all pixels
+   */
+  public long getSumSquaredDelta(int channel)
+  {
+    return sumSquaredDelta[channel];
+  }
+
+  /**
+   * Method to get the largest absolute change in a channel
+   * @param channel RED, GREEN, or BLUE
+   * @return the largest change (0 to 255)
+   */
+  public int getMaxDelta(int channel) { return maxDelta[channel]; }
+
+  /**
+   * Method to get the average absolute change in a channel over the
+   * pixels that are different
+   * @param channel RED, GREEN, or BLUE
+   * @return the mean change, or 0 if there are no differences
+   */
+  public double getMeanDelta(int channel)
+  {
+    return (count == 0) ? 0 : (double) sumDelta[channel] / count;
+  }
+
+  /**
+   * Method to return a string with information about the differences
+   * @return a string with the count, box, and mean channel changes
+   */
+  public String toString()
+  {
+    return "DiffStats count " + count + " of " + pixelCount +
+      " box " + getBoundingBox() +
+      String.format(" mean delta r %.2f g %.2f b %.2f",
+                    getMeanDelta(RED),getMeanDelta(GREEN),getMeanDelta(BLUE));
+  }
+
+}
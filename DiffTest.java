@@ -0,0 +1,108 @@
+import java.awt.Rectangle;
+
+/**
+ * Class that tests Steganography.findDifferences and isSame, and that
+ * they agree with DiffStats.  Run it like any other class:
+ * <pre>
+ *   java DiffTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class DiffTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test pictures that differ at every pixel but that a
+   * linear tile hash would call the same (see ContentHashTest)
+   */
+  public static void testSwappedColors()
+  {
+    Picture[] pair = ContentHashTest.makeSwappedPair(130,70);
+    Picture p1 = pair[0];
+    Picture p2 = pair[1];
+    long pixels = 130L * 70;
+    check(Steganography.findDifferences(p1,p2).cardinality() == pixels,
+          "findDifferences missed pixels");
+    check(Steganography.findDifferences(p1,p2,ColorTolerance.perChannel(2))
+          .cardinality() == pixels,"findDifferences with a tolerance missed pixels");
+    check(!Steganography.isSame(p1,p2),"isSame said they were the same");
+    check(!Steganography.isSame(p1,p2,ColorTolerance.EXACT),
+          "isSame with EXACT said they were the same");
+    check(DiffStats.compare(p1,p2).getCount() == pixels,"DiffStats missed pixels");
+
+    // the colors are 0x30 apart in each channel
+    check(Steganography.isSame(p1,p2,ColorTolerance.perChannel(0x30)),
+          "isSame with a big enough tolerance said they were different");
+  }
+
+  /**
+   * Method to test that findDifferences marks just the changed pixels,
+   * including ones in the last, smaller tiles
+   */
+  public static void testChangedPixels()
+  {
+    Picture p1 = new Picture(100,150);
+    Picture p2 = new Picture(p1);
+    p2.setBasicPixel(0,0,0x000001);
+    p2.setBasicPixel(149,99,0x000100);
+    p2.setBasicPixel(64,64,0x010000);
+    DiffMask mask = Steganography.findDifferences(p1,p2);
+    check(mask.cardinality() == 3,"expected 3 differences, not " + mask.cardinality());
+    check(mask.get(0,0) && mask.get(149,99) && mask.get(64,64),
+          "the wrong pixels were marked");
+    check(mask.getBoundingBox().equals(new Rectangle(0,0,150,100)),
+          "wrong bounding box " + mask.getBoundingBox());
+    check(DiffStats.compare(p1,p2).getCount() == 3,"DiffStats disagrees");
+    check(Steganography.findDifferences(p1,new Picture(p1)).isEmpty(),
+          "a copy had differences");
+  }
+
+  /**
+   * Method to test that a tolerance leaves out small changes
+   */
+  public static void testTolerance()
+  {
+    Picture p1 = new Picture(10,10);
+    Picture p2 = new Picture(p1);
+    int rgb = p1.getBasicPixel(3,3);
+    p2.setBasicPixel(3,3,rgb ^ 0x000003);
+    p2.setBasicPixel(4,4,rgb ^ 0x800000);
+    DiffMask mask = Steganography.findDifferences(p1,p2,ColorTolerance.perChannel(3));
+    check(mask.cardinality() == 1 && mask.get(4,4),"the tolerance wasn't used");
+    check(!Steganography.isSame(p1,p2,ColorTolerance.perChannel(3)),
+          "isSame missed a big change");
+    check(Steganography.isSame(p1,p2,ColorTolerance.perChannel(0x80)),
+          "isSame counted a change within the tolerance");
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   */
+  public static void main(String[] args)
+  {
+    testSwappedColors();
+    System.out.println("testSwappedColors passed");
+    testChangedPixels();
+    System.out.println("testChangedPixels passed");
+    testTolerance();
+    System.out.println("testTolerance passed");
+  }
+
+}
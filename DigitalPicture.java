@@ -20,8 +20,13 @@ public interface DigitalPicture
   public int getHeight(); // get the height of the picture in pixels
   public Image getImage(); // get the image from the picture
   public BufferedImage getBufferedImage(); // get the buffered image
+  public boolean hasAlpha(); // true if the pixels store alpha (transparency)
   public int getBasicPixel(int x, int y); // get the pixel information as an int   
   public void setBasicPixel(int x, int y, int rgb); // set the pixel information
+  public int[] getBasicPixels(int x, int y, int width, int height, int[] buffer); // get a rectangle of packed pixels in row-major order
+  public void setBasicPixels(int x, int y, int width, int height, int[] pixels); // set a rectangle of packed pixels in row-major order
+  public int[] getBasicRow(int y, int[] buffer); // get one row of packed pixels
+  public void setBasicRow(int y, int[] pixels); // set one row of packed pixels
   public Pixel getPixel(int x, int y); // get the pixel information as an object
   public Pixel[] getPixels(); // get all pixels in row-major order
   public Pixel[][] getPixels2D(); // get 2-D array of pixels in row-major order
@@ -0,0 +1,82 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Class that writes a file by writing a new file in the same directory
+ * first and then moving it over the old one.  If the write fails the
+ * old file is still there, and a picture that is mapped from the old
+ * file (like a raw picture) keeps its pixels, since the old file isn't
+ * changed or truncated.
+ */
+public class FileReplacer
+{
+
+  /**
+   * Interface for the code that writes the new file
+   */
+  public interface Writer
+  {
+    /**
+     * Method to write the new contents
+     * @param file the new file to write to (it exists and is empty)
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException;
+  }
+
+  /**
+   * Method to write a file by writing a new file and moving it over the
+   * old one
+   * @param file the file to write
+   * @param writer the code that writes the new file
+   * @throws IOException if the file can't be written
+   */
+  public static void replace(File file, Writer writer) throws IOException
+  {
+    File temp = createTempFile(file);
+    boolean written = false;
+    try
+    {
+      writer.write(temp);
+      try
+      {
+        Files.move(temp.toPath(),file.toPath(),StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException ex)
+      {
+        Files.move(temp.toPath(),file.toPath(),StandardCopyOption.REPLACE_EXISTING);
+      }
+      written = true;
+    }
+    finally
+    {
+      if (!written)
+        temp.delete();
+    }
+  }
+
+  /**
+   * Method to create an empty file next to a file, to write to before
+   * replacing it
+   * @param file the file that will be replaced
+   * @return the new empty file in the same directory
+   * @throws IOException if the file can't be created
+   */
+  private static File createTempFile(File file) throws IOException
+  {
+    File dir = file.getAbsoluteFile().getParentFile();
+    while (true)
+    {
+      File temp = new File(dir,"." + file.getName() + "." +
+                           Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+      if (temp.createNewFile())
+        return temp;
+    }
+  }
+
+}
@@ -0,0 +1,240 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class that keeps recently decoded images so that loading the same
+ * file again doesn't decode it again.  An image is found by the
+ * canonical path of its file, and is only used if the file still has
+ * the same modification time and size as when it was decoded.
+ *
+ * The cache holds at most a set number of bytes of pixels.  When it is
+ * full the image that was used least recently is dropped.  The cached
+ * images must never be changed: SimplePicture shares them with the
+ * pictures it loads and copies one only when the picture is about to
+ * change (copy-on-write).
+ */
+public class ImageCache
+{
+
+  /////////////////////////// inner types ///////////////////////////////
+
+  /**
+   * Class for one cached image and the file state it was decoded from
+   */
+  private static class Entry
+  {
+    private BufferedImage image;
+    private long lastModified;
+    private long length;
+    private long bytes;
+
+    private Entry(BufferedImage image, long lastModified, long length, long bytes)
+    {
+      this.image = image;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.bytes = bytes;
+    }
+  }
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the number of bytes of pixels the default cache can hold */
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  /** the cache used by SimplePicture */
+  private static ImageCache defaultCache = new ImageCache(DEFAULT_MAX_BYTES);
+
+  /** the cached images by canonical path, least recently used first */
+  private LinkedHashMap<String,Entry> entries =
+    new LinkedHashMap<String,Entry>(16,0.75f,true);
+
+  /** the most bytes of pixels to keep */
+  private long maxBytes;
+
+  /** the bytes of pixels being kept now */
+  private long bytes;
+
+  /** the number of times an image was found */
+  private long hits;
+
+  /** the number of times an image had to be decoded */
+  private long misses;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the size of the cache
+   * @param maxBytes the most bytes of pixels to keep (0 keeps nothing)
+   */
+  public ImageCache(long maxBytes)
+  {
+    if (maxBytes < 0)
+      throw new IllegalArgumentException("cache size can't be negative: " + maxBytes);
+    this.maxBytes = maxBytes;
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to get the cache that SimplePicture uses
+   * @return the default cache
+   */
+  public static ImageCache getDefault() { return defaultCache; }
+
+  /**
+   * Method to change the cache that SimplePicture uses (for example
+   * new ImageCache(0) to turn caching off)
+   * @param cache the new default cache
+   */
+  public static void setDefault(ImageCache cache)
+  {
+    defaultCache = cache;
+  }
+
+  /**
+   * Method to get the image for a file, from the cache if it is there
+   * and else by decoding the file and adding it to the cache
+   * @param file the file to read
+   * @return the decoded image, which must not be changed
+   * @throws IOException if the file can't be read or decoded
+   */
+  public BufferedImage read(File file) throws IOException
+  {
+    String path = file.getCanonicalPath();
+    long lastModified = file.lastModified();
+    long length = file.length();
+    BufferedImage image = get(path,lastModified,length);
+    if (image != null)
+      return image;
+
+    // decode without holding the lock, so other files can be found
+    image = ImageIO.read(file);
+    if (image == null)
+      throw new IOException(file + " is not in a format that can be read");
+    put(path,new Entry(image,lastModified,length,getBytes(image)));
+    return image;
+  }
+
+  /**
+   * Method to find a cached image and count the hit or miss
+   * @param path the canonical path of the file
+   * @param lastModified the modification time of the file now
+   * @param length the size of the file now
+   * @return the image, or null if it isn't cached or the file changed
+   */
+  private synchronized BufferedImage get(String path, long lastModified, long length)
+  {
+    Entry entry = entries.get(path);
+    if (entry != null && entry.lastModified == lastModified &&
+        entry.length == length)
+    {
+      hits++;
+      return entry.image;
+    }
+    if (entry != null)
+      remove(path);
+    misses++;
+    return null;
+  }
+
+  /**
+   * Method to add an image and drop the least recently used images
+   * until the cache fits
+   * @param path the canonical path of the file
+   * @param entry the image and file state
+   */
+  private synchronized void put(String path, Entry entry)
+  {
+    if (entry.bytes > maxBytes)
+      return;
+    remove(path);
+    entries.put(path,entry);
+    bytes += entry.bytes;
+    Iterator<Map.Entry<String,Entry>> iterator = entries.entrySet().iterator();
+    while (bytes > maxBytes && iterator.hasNext())
+    {
+      bytes -= iterator.next().getValue().bytes;
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Method to drop the image for a path
+   * @param path the canonical path of the file
+   */
+  private void remove(String path)
+  {
+    Entry old = entries.remove(path);
+    if (old != null)
+      bytes -= old.bytes;
+  }
+
+  /**
+   * Method to get the number of bytes an image keeps its pixels in
+   * @param image the image
+   * @return the size of the image's data buffer in bytes
+   */
+  private static long getBytes(BufferedImage image)
+  {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long) buffer.getSize() * buffer.getNumBanks() *
+      DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+
+  /**
+   * Method to drop all of the cached images (the counts are kept)
+   */
+  public synchronized void clear()
+  {
+    entries.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Method to get the number of times an image was found in the cache
+   * @return the number of hits
+   */
+  public synchronized long getHits() { return hits; }
+
+  /**
+   * Method to get the number of times a file had to be decoded
+   * @return the number of misses
+   */
+  public synchronized long getMisses() { return misses; }
+
+  /**
+   * Method to get the number of images in the cache
+   * @return the number of cached images
+   */
+  public synchronized int getCount() { return entries.size(); }
+
+  /**
+   * Method to get the bytes of pixels in the cache
+   * @return the number of bytes being kept
+   */
+  public synchronized long getBytes() { return bytes; }
+
+  /**
+   * Method to get the most bytes of pixels the cache will keep
+   * @return the size of the cache in bytes
+   */
+  public long getMaxBytes() { return maxBytes; }
+
+  /**
+   * Method to return a string with information about this cache
+   * @return a string with the counts and sizes
+   */
+  public synchronized String toString()
+  {
+    return "ImageCache images " + entries.size() + " bytes " + bytes +
+      " of " + maxBytes + " hits " + hits + " misses " + misses;
+  }
+
+}
@@ -0,0 +1,231 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Class that holds the size, image type, and format of a picture file,
+ * read from the header of the file without decoding any pixels.  This
+ * is enough to plan capacity (see Steganography.canHide) for many
+ * files in much less time than loading them.
+ */
+public class ImageInfo
+{
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the reader kept for each file extension */
+  private static HashMap<String,ImageReader> readers =
+    new HashMap<String,ImageReader>();
+
+  /** the file that was probed */
+  private File file;
+
+  /** the width in pixels */
+  private int width;
+
+  /** the height in pixels */
+  private int height;
+
+  /** the BufferedImage type the file decodes to (TYPE_CUSTOM if unknown) */
+  private int imageType;
+
+  /** the format name (like "png" or "JPEG") */
+  private String formatName;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes all of the information
+   * @param file the file that was probed
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @param imageType the BufferedImage type
+   * @param formatName the format name
+   */
+  private ImageInfo(File file, int width, int height, int imageType,
+                    String formatName)
+  {
+    this.file = file;
+    this.width = width;
+    this.height = height;
+    this.imageType = imageType;
+    this.formatName = formatName;
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to read the information for a picture file.  If the file
+   * can't be read the media path is tried too, like SimplePicture.load
+   * does.
+   * @param fileName the name of the file
+   * @return the information from the file's header
+   * @throws IOException if the file can't be read or isn't a picture
+   */
+  public static ImageInfo probe(String fileName) throws IOException
+  {
+    File file = new File(fileName);
+    if (!file.canRead())
+    {
+      file = new File(FileChooser.getMediaPath(fileName));
+      if (!file.canRead())
+        throw new IOException(fileName +
+                              " could not be opened. Check that you specified the path");
+    }
+    return probe(file);
+  }
+
+  /**
+   * Method to read the information for a picture file
+   * @param file the file
+   * @return the information from the file's header
+   * @throws IOException if the file can't be read or isn't a picture
+   */
+  public static ImageInfo probe(File file) throws IOException
+  {
+    if (RawImageFile.isRawFile(file.getName()))
+      return probeRaw(file);
+
+    try (ImageInputStream input = ImageIO.createImageInputStream(file))
+    {
+      if (input == null)
+        throw new IOException(file + " could not be opened");
+      ImageReader reader = getReader(file,input);
+      synchronized (reader)
+      {
+        try
+        {
+          // only the header is read for the size and type
+          reader.setInput(input,true,true);
+          ImageTypeSpecifier type = reader.getRawImageType(0);
+          return new ImageInfo(file,reader.getWidth(0),reader.getHeight(0),
+                               type == null ? BufferedImage.TYPE_CUSTOM : type.getBufferedImageType(),
+                               reader.getFormatName());
+        }
+        finally
+        {
+          reader.setInput(null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Method to get a reader for a file.  Looking up a reader (and making
+   * a new one) takes longer than reading the header, so a reader is kept
+   * for each file extension and used again as long as it can decode the
+   * file.
+   * @param file the file
+   * @param input the stream on the file
+   * @return the reader to use (only one thread may use it at a time)
+   * @throws IOException if no reader can decode the file
+   */
+  private static ImageReader getReader(File file, ImageInputStream input)
+    throws IOException
+  {
+    String name = file.getName();
+    int posDot = name.lastIndexOf('.');
+    String extension = (posDot >= 0) ? name.substring(posDot + 1).toLowerCase() : "";
+    ImageReader reader;
+    synchronized (readers)
+    {
+      reader = readers.get(extension);
+    }
+    if (reader != null && reader.getOriginatingProvider().canDecodeInput(input))
+      return reader;
+
+    Iterator<ImageReader> found = ImageIO.getImageReaders(input);
+    if (!found.hasNext())
+      throw new IOException(file + " is not in a format that can be read");
+    reader = found.next();
+    synchronized (readers)
+    {
+      readers.put(extension,reader);
+    }
+    return reader;
+  }
+
+  /**
+   * Method to read the information from the header of a raw file
+   * @param file the raw file
+   * @return the information from the file's header
+   * @throws IOException if the file can't be read or isn't a raw file
+   */
+  private static ImageInfo probeRaw(File file) throws IOException
+  {
+    byte[] header = new byte[RawImageFile.HEADER_BYTES];
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file)))
+    {
+      input.readFully(header);
+    }
+    int magic = littleEndianInt(header,0);
+    int width = littleEndianInt(header,4);
+    int height = littleEndianInt(header,8);
+    int type = littleEndianInt(header,12);
+    if (magic != RawImageFile.MAGIC || width <= 0 || height <= 0)
+      throw new IOException(file + " is not a raw picture file");
+    return new ImageInfo(file,width,height,type,RawImageFile.EXTENSION);
+  }
+
+  /**
+   * Method to get a little endian int from an array of bytes
+   * @param bytes the bytes
+   * @param index the index of the first (lowest) byte
+   * @return the int
+   */
+  private static int littleEndianInt(byte[] bytes, int index)
+  {
+    return (bytes[index] & 0xff) | (bytes[index + 1] & 0xff) << 8 |
+      (bytes[index + 2] & 0xff) << 16 | (bytes[index + 3] & 0xff) << 24;
+  }
+
+  /**
+   * Method to get the file that was probed
+   * @return the file
+   */
+  public File getFile() { return file; }
+
+  /**
+   * Method to get the width of the picture
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the BufferedImage type the file decodes to
+   * @return the image type (like BufferedImage.TYPE_3BYTE_BGR), or
+   * BufferedImage.TYPE_CUSTOM if it isn't one of the standard types
+   */
+  public int getImageType() { return imageType; }
+
+  /**
+   * Method to get the name of the file's format
+   * @return the format name from the image reader (like "png")
+   */
+  public String getFormatName() { return formatName; }
+
+  /**
+   * Method to return a string with information about the file
+   * @return a string with the file name, format, size, and type
+   */
+  public String toString()
+  {
+    return "ImageInfo file " + file + " format " + formatName + " width " +
+      width + " height " + height + " type " + imageType;
+  }
+
+}
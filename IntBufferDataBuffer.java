@@ -0,0 +1,279 @@
+import java.awt.image.DataBuffer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that lets a BufferedImage keep its pixels in an IntBuffer
+ * instead of an int array.  The buffer can be a view of a memory
+ * mapped file (see RawImageFile), so a huge picture can be opened
+ * without reading it all in.  Each int is one packed pixel, like in a
+ * TYPE_INT_RGB or TYPE_INT_ARGB image.
+ *
+ * The buffer can also be off-heap memory made by the size-only
+ * constructor.  Those pixels are not part of the Java heap, so the
+ * garbage collector never has to scan or move them, and close() gives
+ * the memory back right away instead of waiting for the garbage
+ * collector (see SimplePicture.moveOffHeap).  Every read and write
+ * through the methods of this class holds the memory while it runs
+ * (see acquire), so closing never frees memory that is in use: it is
+ * freed as soon as the reads and writes going on finish, and any use
+ * after that throws an IllegalStateException.
+ *
+ * SimplePicture reads and writes whole runs of pixels with the bulk
+ * get and put methods.
+ */
+public class IntBufferDataBuffer extends DataBuffer
+{
+
+  /////////////////////////// constants ////////////////////////////////
+
+  /** the bit in the state that is set once close() is called */
+  private static final int CLOSED = 1 << 30;
+
+  /** the state once the memory has been freed */
+  private static final int FREED = CLOSED | (1 << 29);
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the buffer that holds the pixels */
+  private final IntBuffer buffer;
+
+  /** the off-heap memory behind the buffer, or null if not allocated here */
+  private final ByteBuffer memory;
+
+  /** the number of reads and writes using the off-heap memory, plus
+   * CLOSED once close() is called (or FREED once it is freed) */
+  private final AtomicInteger state = new AtomicInteger();
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the buffer to use.  The buffer's position
+   * is ignored; element 0 is at index 0 of the buffer.
+   * @param buffer the buffer that holds the packed pixels
+   * @param size the number of ints to use
+   */
+  public IntBufferDataBuffer(IntBuffer buffer, int size)
+  {
+    super(DataBuffer.TYPE_INT,size);
+    if (buffer.capacity() < size)
+      throw new IllegalArgumentException("buffer holds " + buffer.capacity() +
+                                         " ints, not " + size);
+    this.buffer = buffer;
+    this.memory = null;
+  }
+
+  /**
+   * A constructor that allocates off-heap memory for the pixels.  The
+   * ints are in the native byte order, so reading and writing them
+   * needs no byte swapping.  The memory starts out all 0.
+   * @param size the number of ints to allocate
+   */
+  public IntBufferDataBuffer(int size)
+  {
+    super(DataBuffer.TYPE_INT,size);
+    if (size < 0 || size > Integer.MAX_VALUE / 4)
+      throw new IllegalArgumentException("can't allocate " + size + " ints");
+    this.memory = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder());
+    this.buffer = memory.asIntBuffer();
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to get the buffer that holds the pixels.  For off-heap
+   * memory the buffer must only be used between acquire() and
+   * release(), since it can't be used at all once the memory is freed.
+   * @return the int buffer
+   */
+  public IntBuffer getBuffer() { return buffer; }
+
+  /**
+   * Method to tell if the pixels are in off-heap memory allocated by
+   * this data buffer (even if it has been closed)
+   * @return true if the memory was allocated by the size-only constructor
+   */
+  public boolean isOffHeap() { return memory != null; }
+
+  /**
+   * Method to tell if close() has been called
+   * @return true if the off-heap memory is freed or about to be
+   */
+  public boolean isClosed() { return (state.get() & CLOSED) != 0; }
+
+  /**
+   * Method to hold the off-heap memory so that it isn't freed until
+   * release() is called.  Every call must be matched by a call to
+   * release(), in a finally block.  This does nothing for memory that
+   * wasn't allocated here.
+   * @throws IllegalStateException if the memory has been closed
+   */
+  public void acquire()
+  {
+    if (memory == null)
+      return;
+    while (true)
+    {
+      int users = state.get();
+      if ((users & CLOSED) != 0)
+        throw new IllegalStateException("the off-heap pixels have been closed");
+      if (state.compareAndSet(users,users + 1))
+        return;
+    }
+  }
+
+  /**
+   * Method to let go of the memory held by acquire().  If the memory
+   * was closed while it was held and nothing else holds it, it is freed
+   * now.
+   */
+  public void release()
+  {
+    if (memory == null)
+      return;
+    if (state.decrementAndGet() == CLOSED && state.compareAndSet(CLOSED,FREED))
+      free(memory);
+  }
+
+  /**
+   * Method to give back the off-heap memory allocated by this data
+   * buffer.  It is freed right away, or if something is reading or
+   * writing it, as soon as that finishes.  Any use of this data buffer
+   * after that throws an IllegalStateException.  This does nothing if
+   * the memory wasn't allocated here or was already closed.
+   */
+  public void close()
+  {
+    if (memory == null)
+      return;
+    int users = state.getAndUpdate(s -> s | CLOSED);
+    if (users == 0 && state.compareAndSet(CLOSED,FREED))
+      free(memory);
+  }
+
+  /**
+   * Method to free direct memory now rather than when the garbage
+   * collector finds the buffer.  This uses sun.misc.Unsafe.invokeCleaner,
+   * and if that isn't there the memory is left for the garbage
+   * collector to give back.
+   * @param memory the direct buffer to free
+   */
+  private static void free(ByteBuffer memory)
+  {
+    try
+    {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",ByteBuffer.class);
+      invokeCleaner.invoke(field.get(null),memory);
+    }
+    catch (ReflectiveOperationException | RuntimeException ex)
+    {
+      // the garbage collector will free it once nothing refers to it
+    }
+  }
+
+  /**
+   * Method to get one int
+   * @param index the index of the int
+   * @return the int
+   */
+  public int get(int index)
+  {
+    acquire();
+    try
+    {
+      return buffer.get(index);
+    }
+    finally
+    {
+      release();
+    }
+  }
+
+  /**
+   * Method to set one int
+   * @param index the index of the int
+   * @param value the new value
+   */
+  public void put(int index, int value)
+  {
+    acquire();
+    try
+    {
+      buffer.put(index,value);
+    }
+    finally
+    {
+      release();
+    }
+  }
+
+  /**
+   * Method to copy a run of ints into an array
+   * @param index the index of the first int to get
+   * @param to the array to copy into
+   * @param offset the index in the array of the first int
+   * @param length the number of ints
+   */
+  public void get(int index, int[] to, int offset, int length)
+  {
+    acquire();
+    try
+    {
+      buffer.get(index,to,offset,length);
+    }
+    finally
+    {
+      release();
+    }
+  }
+
+  /**
+   * Method to copy a run of ints from an array
+   * @param index the index of the first int to set
+   * @param from the array to copy from
+   * @param offset the index in the array of the first int
+   * @param length the number of ints
+   */
+  public void put(int index, int[] from, int offset, int length)
+  {
+    acquire();
+    try
+    {
+      buffer.put(index,from,offset,length);
+    }
+    finally
+    {
+      release();
+    }
+  }
+
+  /**
+   * Method to get one element
+   * @param bank the bank (always 0)
+   * @param i the index of the element
+   * @return the element
+   */
+  public int getElem(int bank, int i)
+  {
+    return get(i);
+  }
+
+  /**
+   * Method to set one element
+   * @param bank the bank (always 0)
+   * @param i the index of the element
+   * @param val the new value
+   */
+  public void setElem(int bank, int i, int val)
+  {
+    put(i,val);
+  }
+
+}
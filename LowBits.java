@@ -0,0 +1,543 @@
+/**
+ * Class of kernels that work on the low bits of packed pixel values
+ * (alpha, red, green, blue with 8 bits each).  Each kernel changes
+ * a run of ints in an array, which can be a row buffer or the raster
+ * data of a picture.  All three color channels are done at once with
+ * a single mask, shift, and or per pixel.
+ *
+ * The loops run on the Vector API (jdk.incubator.vector) when it is
+ * there: LowBitsVector (in the vector directory) is compiled and run
+ * with the module added, like this:
+ * <pre>
+ *   javac --add-modules jdk.incubator.vector -d . vector/LowBitsVector.java
+ *   java --add-modules jdk.incubator.vector LowBitsBenchmark
+ * </pre>
+ * Otherwise (or with -DLowBits.scalar=true) plain loops are used, which
+ * the JIT can only turn into vector (SIMD) instructions in the simplest
+ * cases.  See LowBitsBenchmark for the speed of each.
+ *
+ * The depth is the number of low bits used in each color, from 1 to
+ * 4.  The methods without a depth use 2 bits.  The top (alpha) byte of
+ * each value is always kept as is.
+ */
+public class LowBits
+{
+
+  /** the depth used when none is given */
+  public static final int DEFAULT_DEPTH = 2;
+
+  /** the smallest depth */
+  public static final int MIN_DEPTH = 1;
+
+  /** the largest depth */
+  public static final int MAX_DEPTH = 4;
+
+  /** the two lowest bits of red, green, and blue */
+  public static final int MASK = 0x030303;
+
+  /** the low bits of red, green, and blue for each depth */
+  private static final int[] MASKS = {0, 0x010101, 0x030303, 0x070707, 0x0f0f0f};
+
+  /** the loops the kernels run on */
+  private static final Loops LOOPS = loadLoops();
+
+  /////////////////////////// loops ////////////////////////////////////
+
+  /**
+   * Interface for the loops behind the kernels.  The arguments have
+   * already been checked.
+   */
+  interface Loops
+  {
+    /** pixels[i] = (pixels[i] & keep) | bits */
+    public void maskOr(int[] pixels, int from, int to, int keep, int bits);
+
+    /** pixels[i] = (pixels[i] & ~mask) | ((secret[j] >> shift) & mask) */
+    public void setHigh(int[] pixels, int from, int to, int[] secret,
+                        int secretFrom, int mask, int shift);
+
+    /** pixels[i] = (pixels[i] & 0xff000000) | ((pixels[i] & mask) << shift) */
+    public void reveal(int[] pixels, int from, int to, int mask, int shift);
+
+    /** spreads codes[j] over the low depth bits of pixels[i] */
+    public void setCodes(int[] pixels, int from, int to, int[] codes,
+                         int codesFrom, int depth);
+
+    /** gathers codes[j] from the low depth bits of pixels[i] */
+    public void getCodes(int[] pixels, int from, int to, int[] codes,
+                         int codesFrom, int depth);
+  }
+
+  /**
+   * Class of plain loops for when the Vector API isn't there.  Loops
+   * that take two arrays have a separate loop for when both start at
+   * the same index.  The JIT only vectorizes that case, since otherwise
+   * the two runs might overlap in the same array.
+   */
+  static class ScalarLoops implements Loops
+  {
+    public void maskOr(int[] pixels, int from, int to, int keep, int bits)
+    {
+      for (int i = from; i < to; i++)
+        pixels[i] = (pixels[i] & keep) | bits;
+    }
+
+    public void setHigh(int[] pixels, int from, int to, int[] secret,
+                        int secretFrom, int mask, int shift)
+    {
+      if (secretFrom == from)
+        for (int i = from; i < to; i++)
+          pixels[i] = (pixels[i] & ~mask) | ((secret[i] >> shift) & mask);
+      else
+        for (int i = from, j = secretFrom; i < to; i++, j++)
+          pixels[i] = (pixels[i] & ~mask) | ((secret[j] >> shift) & mask);
+    }
+
+    public void reveal(int[] pixels, int from, int to, int mask, int shift)
+    {
+      for (int i = from; i < to; i++)
+        pixels[i] = (pixels[i] & 0xff000000) | ((pixels[i] & mask) << shift);
+    }
+
+    public void setCodes(int[] pixels, int from, int to, int[] codes,
+                         int codesFrom, int depth)
+    {
+      int mask = MASKS[depth];
+      if (codesFrom == from)
+        for (int i = from; i < to; i++)
+          pixels[i] = (pixels[i] & ~mask) | spreadCode(codes[i],depth);
+      else
+        for (int i = from, j = codesFrom; i < to; i++, j++)
+          pixels[i] = (pixels[i] & ~mask) | spreadCode(codes[j],depth);
+    }
+
+    public void getCodes(int[] pixels, int from, int to, int[] codes,
+                         int codesFrom, int depth)
+    {
+      if (codesFrom == from)
+        for (int i = from; i < to; i++)
+          codes[i] = gatherCode(pixels[i],depth);
+      else
+        for (int i = from, j = codesFrom; i < to; i++, j++)
+          codes[j] = gatherCode(pixels[i],depth);
+    }
+  }
+
+  /**
+   * Method to pick the loops: LowBitsVector if it and the Vector API
+   * can be loaded, else the plain loops
+   * @return the loops to use
+   */
+  private static Loops loadLoops()
+  {
+    if (Boolean.getBoolean("LowBits.scalar"))
+      return new ScalarLoops();
+    try
+    {
+      return (Loops) Class.forName("LowBitsVector").getDeclaredConstructor().newInstance();
+    }
+    catch (ReflectiveOperationException | LinkageError | ClassCastException ex)
+    {
+      // not compiled, or run without --add-modules jdk.incubator.vector
+      return new ScalarLoops();
+    }
+  }
+
+  /**
+   * Method to tell if the kernels run on the Vector API
+   * @return true if LowBitsVector is being used
+   */
+  public static boolean isVectorized() { return LOOPS.getClass() != ScalarLoops.class; }
+
+  /////////////////////////// kernels //////////////////////////////////
+
+  /**
+   * Method to get the low bits mask of red, green, and blue for a depth
+   * @param depth the number of low bits in each color (1 to 4)
+   * @return the mask
+   */
+  public static int mask(int depth)
+  {
+    checkDepth(depth);
+    return MASKS[depth];
+  }
+
+  /**
+   * Method to check that a depth is from 1 to 4
+   * @param depth the depth to check
+   */
+  public static void checkDepth(int depth)
+  {
+    if (depth < MIN_DEPTH || depth > MAX_DEPTH)
+      throw new IllegalArgumentException("depth must be from " + MIN_DEPTH +
+                                         " to " + MAX_DEPTH + ", not " + depth);
+  }
+
+  /**
+   * Method to clear the low two bits of each color (like (v / 4) * 4
+   * on each of red, green, and blue)
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   */
+  public static void clear(int[] pixels, int from, int to)
+  {
+    clear(pixels,from,to,DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to clear the low bits of each color
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param depth the number of low bits to clear in each color
+   */
+  public static void clear(int[] pixels, int from, int to, int depth)
+  {
+    LOOPS.maskOr(pixels,from,to,~mask(depth),0);
+  }
+
+  /**
+   * Method to put the high two bits of each color of one color into
+   * the low two bits of every pixel (like adding c / 64 to each
+   * cleared color)
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param color the packed color to hide
+   */
+  public static void set(int[] pixels, int from, int to, int color)
+  {
+    LOOPS.maskOr(pixels,from,to,~MASK,(color >> 6) & MASK);
+  }
+
+  /**
+   * Method to put the high two bits of each color of the secret pixels
+   * into the low two bits of the pixels
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param secret the packed pixel values to hide
+   * @param secretFrom the index in secret that goes with pixels[from]
+   */
+  public static void set(int[] pixels, int from, int to,
+                         int[] secret, int secretFrom)
+  {
+    set(pixels,from,to,secret,secretFrom,DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to put the high bits of each color of the secret pixels
+   * into the low bits of the pixels
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param secret the packed pixel values to hide
+   * @param secretFrom the index in secret that goes with pixels[from]
+   * @param depth the number of bits to hide in each color
+   */
+  public static void set(int[] pixels, int from, int to,
+                         int[] secret, int secretFrom, int depth)
+  {
+    LOOPS.setHigh(pixels,from,to,secret,secretFrom,mask(depth),8 - depth);
+  }
+
+  /**
+   * Method to move the low two bits of each color up to the high two
+   * bits and clear the rest (like (v % 4) * 64 on each color)
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   */
+  public static void reveal(int[] pixels, int from, int to)
+  {
+    reveal(pixels,from,to,DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to move the low bits of each color up to the high bits and
+   * clear the rest
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param depth the number of low bits in each color to reveal
+   */
+  public static void reveal(int[] pixels, int from, int to, int depth)
+  {
+    LOOPS.reveal(pixels,from,to,mask(depth),8 - depth);
+  }
+
+  /**
+   * Method to hide 6 bit codes in the low bits of the pixels.  Bits
+   * 0-1 of a code go into red, 2-3 into green and 4-5 into blue.
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param codes the codes to hide (0 to 63)
+   * @param codesFrom the index in codes that goes with pixels[from]
+   */
+  public static void setCodes(int[] pixels, int from, int to,
+                              int[] codes, int codesFrom)
+  {
+    setCodes(pixels,from,to,codes,codesFrom,DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to hide codes of 3 * depth bits in the low bits of the
+   * pixels.  The lowest depth bits of a code go into red, the next
+   * into green, and the highest into blue.
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to change
+   * @param to one past the index of the last value to change
+   * @param codes the codes to hide
+   * @param codesFrom the index in codes that goes with pixels[from]
+   * @param depth the number of bits to hide in each color
+   */
+  public static void setCodes(int[] pixels, int from, int to,
+                              int[] codes, int codesFrom, int depth)
+  {
+    checkDepth(depth);
+    LOOPS.setCodes(pixels,from,to,codes,codesFrom,depth);
+  }
+
+  /**
+   * Method to spread a code over the low bits of red, green, and blue
+   * @param code the code (3 * depth bits)
+   * @param depth the number of bits in each color
+   * @return the packed low bits
+   */
+  private static int spreadCode(int code, int depth)
+  {
+    int bits = (1 << depth) - 1;
+    return ((code & bits) << 16) | (((code >> depth) & bits) << 8) |
+           ((code >> (2 * depth)) & bits);
+  }
+
+  /**
+   * Method to get the 6 bit codes hidden in the low bits of the pixels
+   * (the opposite of setCodes)
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to read
+   * @param to one past the index of the last value to read
+   * @param codes the array to put the codes in
+   * @param codesFrom the index in codes for the code from pixels[from]
+   */
+  public static void getCodes(int[] pixels, int from, int to,
+                              int[] codes, int codesFrom)
+  {
+    getCodes(pixels,from,to,codes,codesFrom,DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to get the codes of 3 * depth bits hidden in the low bits
+   * of the pixels (the opposite of setCodes)
+   * @param pixels the packed pixel values
+   * @param from the index of the first value to read
+   * @param to one past the index of the last value to read
+   * @param codes the array to put the codes in
+   * @param codesFrom the index in codes for the code from pixels[from]
+   * @param depth the number of bits hidden in each color
+   */
+  public static void getCodes(int[] pixels, int from, int to,
+                              int[] codes, int codesFrom, int depth)
+  {
+    checkDepth(depth);
+    LOOPS.getCodes(pixels,from,to,codes,codesFrom,depth);
+  }
+
+  /**
+   * Method to gather a code from the low bits of a pixel value
+   * @param value the packed pixel value
+   * @param depth the number of bits in each color
+   * @return the code (3 * depth bits)
+   */
+  private static int gatherCode(int value, int depth)
+  {
+    int bits = (1 << depth) - 1;
+    return ((value >> 16) & bits) | (((value >> 8) & bits) << depth) |
+           ((value & bits) << (2 * depth));
+  }
+
+  /**
+   * Method to get the number of 6 bit codes needed to hold some bytes
+   * @param byteCount the number of bytes
+   * @return the number of codes (one code per pixel)
+   */
+  public static int codesFor(long byteCount)
+  {
+    return codesFor(byteCount,DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to get the number of codes needed to hold some bytes
+   * @param byteCount the number of bytes
+   * @param depth the number of bits in each color (each code is
+   * 3 * depth bits)
+   * @return the number of codes (one code per pixel)
+   */
+  public static int codesFor(long byteCount, int depth)
+  {
+    int codeBits = 3 * depth;
+    return (int) ((byteCount * 8 + codeBits - 1) / codeBits);
+  }
+
+  /**
+   * Method to split bytes into 6 bit codes.  The bytes are treated as
+   * one long run of bits, lowest bit of the first byte first, so every
+   * 3 bytes become 4 codes.  The last code is padded with 0 bits.
+   * @param bytes the bytes to split
+   * @param from the index of the first byte
+   * @param to one past the index of the last byte
+   * @param codes the array to put the codes in (needs room for
+   * codesFor(to - from) codes)
+   * @param codesFrom the index in codes for the first code
+   */
+  public static void bytesToCodes(byte[] bytes, int from, int to,
+                                  int[] codes, int codesFrom)
+  {
+    int i = from;
+    int j = codesFrom;
+
+    // whole groups of 3 bytes
+    for (; i + 3 <= to; i += 3, j += 4)
+    {
+      int bits = (bytes[i] & 0xff) | ((bytes[i + 1] & 0xff) << 8) |
+                 ((bytes[i + 2] & 0xff) << 16);
+      codes[j] = bits & 0x3f;
+      codes[j + 1] = (bits >> 6) & 0x3f;
+      codes[j + 2] = (bits >> 12) & 0x3f;
+      codes[j + 3] = (bits >> 18) & 0x3f;
+    }
+
+    // 1 or 2 bytes left over
+    if (i < to)
+    {
+      int bits = bytes[i] & 0xff;
+      int count = 2;
+      if (i + 1 < to)
+      {
+        bits |= (bytes[i + 1] & 0xff) << 8;
+        count = 3;
+      }
+      for (int k = 0; k < count; k++)
+        codes[j + k] = (bits >> (6 * k)) & 0x3f;
+    }
+  }
+
+  /**
+   * Method to split bytes into codes of 3 * depth bits, in the same
+   * bit order as bytesToCodes
+   * @param bytes the bytes to split
+   * @param from the index of the first byte
+   * @param to one past the index of the last byte
+   * @param codes the array to put the codes in (needs room for
+   * codesFor(to - from, depth) codes)
+   * @param codesFrom the index in codes for the first code
+   * @param depth the number of bits in each color
+   */
+  public static void bytesToCodes(byte[] bytes, int from, int to,
+                                  int[] codes, int codesFrom, int depth)
+  {
+    if (depth == 2)
+    {
+      bytesToCodes(bytes,from,to,codes,codesFrom);
+      return;
+    }
+
+    checkDepth(depth);
+    int codeBits = 3 * depth;
+    int codeMask = (1 << codeBits) - 1;
+    long pending = 0;
+    int pendingBits = 0;
+    int j = codesFrom;
+    for (int i = from; i < to; i++)
+    {
+      pending |= (long) (bytes[i] & 0xff) << pendingBits;
+      pendingBits += 8;
+      while (pendingBits >= codeBits)
+      {
+        codes[j++] = (int) pending & codeMask;
+        pending >>>= codeBits;
+        pendingBits -= codeBits;
+      }
+    }
+    if (pendingBits > 0)
+      codes[j] = (int) pending & codeMask;
+  }
+
+  /**
+   * Method to join 6 bit codes back into bytes (the opposite of
+   * bytesToCodes)
+   * @param codes the codes to join
+   * @param codesFrom the index of the first code
+   * @param bytes the array to put the bytes in
+   * @param from the index in bytes for the first byte
+   * @param to one past the index of the last byte to fill
+   */
+  public static void codesToBytes(int[] codes, int codesFrom,
+                                  byte[] bytes, int from, int to)
+  {
+    int i = from;
+    int j = codesFrom;
+
+    // whole groups of 4 codes
+    for (; i + 3 <= to; i += 3, j += 4)
+    {
+      int bits = (codes[j] & 0x3f) | ((codes[j + 1] & 0x3f) << 6) |
+                 ((codes[j + 2] & 0x3f) << 12) | ((codes[j + 3] & 0x3f) << 18);
+      bytes[i] = (byte) bits;
+      bytes[i + 1] = (byte) (bits >> 8);
+      bytes[i + 2] = (byte) (bits >> 16);
+    }
+
+    // 1 or 2 bytes left over (from 2 or 3 codes)
+    if (i < to)
+    {
+      int bits = (codes[j] & 0x3f) | ((codes[j + 1] & 0x3f) << 6);
+      if (i + 1 < to)
+        bits |= (codes[j + 2] & 0x3f) << 12;
+      bytes[i] = (byte) bits;
+      if (i + 1 < to)
+        bytes[i + 1] = (byte) (bits >> 8);
+    }
+  }
+
+  /**
+   * Method to join codes of 3 * depth bits back into bytes (the
+   * opposite of bytesToCodes)
+   * @param codes the codes to join
+   * @param codesFrom the index of the first code
+   * @param bytes the array to put the bytes in
+   * @param from the index in bytes for the first byte
+   * @param to one past the index of the last byte to fill
+   * @param depth the number of bits in each color
+   */
+  public static void codesToBytes(int[] codes, int codesFrom,
+                                  byte[] bytes, int from, int to, int depth)
+  {
+    if (depth == 2)
+    {
+      codesToBytes(codes,codesFrom,bytes,from,to);
+      return;
+    }
+
+    checkDepth(depth);
+    int codeBits = 3 * depth;
+    int codeMask = (1 << codeBits) - 1;
+    long pending = 0;
+    int pendingBits = 0;
+    int j = codesFrom;
+    for (int i = from; i < to; i++)
+    {
+      while (pendingBits < 8)
+      {
+        pending |= (long) (codes[j++] & codeMask) << pendingBits;
+        pendingBits += codeBits;
+      }
+      bytes[i] = (byte) pending;
+      pending >>>= 8;
+      pendingBits -= 8;
+    }
+  }
+
+}
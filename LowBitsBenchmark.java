@@ -0,0 +1,267 @@
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Class that times the LowBits kernels three ways:
+ * <ul>
+ * <li>pixel: the original way, with a Pixel and a new Color for each
+ * pixel of a picture (like the first versions of Steganography)</li>
+ * <li>scalar: the plain LowBits loops on packed ints</li>
+ * <li>vector: the LowBits loops on the Vector API (see LowBitsVector),
+ * if it could be loaded</li>
+ * </ul>
+ * The packed kernels are run a row at a time, the way forEachRow and
+ * the stego streams run them.  Each packed job has its own row loop so
+ * that the JIT compiles each kernel call on its own (a shared loop
+ * calling several kernels would not be inlined and would time the
+ * calls instead of the kernels).  Run it with an optional number of
+ * megapixels:
+ * <pre>
+ *   java --add-modules jdk.incubator.vector LowBitsBenchmark 16
+ * </pre>
+ * Throughput is reported in MB/s of packed pixel data (4 bytes per pixel).
+ */
+public class LowBitsBenchmark
+{
+
+  /** the number of timed runs of each packed kernel */
+  private static final int RUNS = 10;
+
+  /** the number of timed runs of each pixel kernel (they are slow) */
+  private static final int PIXEL_RUNS = 2;
+
+  /** how many times more warm up runs there are than timed runs */
+  private static final int WARMUP = 3;
+
+  /** the width of a row (the packed kernels are run one row at a time) */
+  private static final int WIDTH = 4096;
+
+  /** the number of rows in the picture the pixel kernels use */
+  private static final int PIXEL_ROWS = 256;
+
+  /** the plain loops, to time next to the ones LowBits uses */
+  private static final LowBits.ScalarLoops SCALAR = new LowBits.ScalarLoops();
+
+  /**
+   * Interface for one timed run of a kernel
+   */
+  private interface Job
+  {
+    public void run();
+  }
+
+  /**
+   * Interface for a kernel that works on Pixel objects
+   */
+  private interface PixelKernel
+  {
+    public void run(Picture picture, Picture other);
+  }
+
+  /////////////////////// pixel versions /////////////////////////////
+
+  /**
+   * Method to clear the low bits the original way
+   */
+  private static void pixelClear(Picture picture, Picture other)
+  {
+    for (Pixel[] row : picture.getPixels2D())
+      for (Pixel p : row)
+      {
+        int r = (p.getRed() / 4) * 4;
+        int g = (p.getGreen() / 4) * 4;
+        int b = (p.getBlue() / 4) * 4;
+        p.setColor(new Color(r,g,b));
+      }
+  }
+
+  /**
+   * Method to hide the other picture the original way
+   */
+  private static void pixelSet(Picture picture, Picture other)
+  {
+    Pixel[][] hp = picture.getPixels2D();
+    Pixel[][] sp = other.getPixels2D();
+    for (int r = 0; r < hp.length; r++)
+      for (int c = 0; c < hp[0].length; c++)
+      {
+        Pixel p = hp[r][c];
+        Color secret = sp[r][c].getColor();
+        int red = (p.getRed() / 4) * 4 + secret.getRed() / 64;
+        int green = (p.getGreen() / 4) * 4 + secret.getGreen() / 64;
+        int blue = (p.getBlue() / 4) * 4 + secret.getBlue() / 64;
+        p.setColor(new Color(red,green,blue));
+      }
+  }
+
+  /**
+   * Method to reveal the low bits the original way
+   */
+  private static void pixelReveal(Picture picture, Picture other)
+  {
+    for (Pixel[] row : picture.getPixels2D())
+      for (Pixel p : row)
+      {
+        Color col = p.getColor();
+        int r = (col.getRed() % 4) * 64;
+        int g = (col.getGreen() % 4) * 64;
+        int b = (col.getBlue() % 4) * 64;
+        p.setColor(new Color(r,g,b));
+      }
+  }
+
+  /**
+   * Method to hide 6 bit codes (kept in the blue of the other picture)
+   * one bit pair at a time, the original way
+   */
+  private static void pixelCodes(Picture picture, Picture other)
+  {
+    Pixel[][] hp = picture.getPixels2D();
+    Pixel[][] cp = other.getPixels2D();
+    for (int r = 0; r < hp.length; r++)
+      for (int c = 0; c < hp[0].length; c++)
+      {
+        Pixel p = hp[r][c];
+        int num = cp[r][c].getBlue() & 0x3f;
+        int[] bits = new int[3];
+        for (int i = 0; i < 3; i++)
+        {
+          bits[i] = num % 4;
+          num /= 4;
+        }
+        Color old = p.getColor();
+        p.setColor(new Color((old.getRed() / 4) * 4 + bits[0],
+                             (old.getGreen() / 4) * 4 + bits[1],
+                             (old.getBlue() / 4) * 4 + bits[2]));
+      }
+  }
+
+  /////////////////////////// timing /////////////////////////////////
+
+  /**
+   * Method to time a job and print its throughput
+   * @param name the name to print
+   * @param job the job to time
+   * @param pixels the number of pixels the job works on
+   * @param runs the number of timed runs
+   * @return the throughput in MB/s
+   */
+  private static double time(String name, Job job, long pixels, int runs)
+  {
+    // warm up so that the JIT has compiled the loop (the Vector API is
+    // only fast once the JIT has compiled it)
+    for (int i = 0; i < WARMUP * runs; i++)
+      job.run();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < runs; i++)
+      job.run();
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    double megabytes = (double) pixels * 4 * runs / (1 << 20);
+    double rate = megabytes / seconds;
+    System.out.printf("  %-8s %10.1f MB/s%n", name, rate);
+    return rate;
+  }
+
+  /**
+   * Method to time the pixel, scalar, and vector versions of a kernel
+   * and print them along with the speedups.  The vector version is run
+   * through the public LowBits method, like the rest of the code does.
+   * @param name the name of the kernel
+   * @param pixelJob the job that runs the kernel on Pixel objects
+   * @param pixelCount the number of pixels the pixel job works on
+   * @param scalarJob the job that runs the plain loop on every row
+   * @param job the job that runs the LowBits method on every row
+   * @param count the number of pixels the packed jobs work on
+   */
+  private static void compare(String name, Job pixelJob, long pixelCount,
+                              Job scalarJob, Job job, long count)
+  {
+    System.out.println(name);
+    double pixelRate = time("pixel",pixelJob,pixelCount,PIXEL_RUNS);
+    double scalarRate = time("scalar",scalarJob,count,RUNS);
+    System.out.printf("  scalar is %.1fx pixel%n", scalarRate / pixelRate);
+    if (LowBits.isVectorized())
+    {
+      double vectorRate = time("vector",job,count,RUNS);
+      System.out.printf("  vector is %.1fx pixel, %.2fx scalar%n",
+                        vectorRate / pixelRate, vectorRate / scalarRate);
+    }
+  }
+
+  /**
+   * Main method to run the benchmark
+   * @param args the optional number of megapixels to use
+   */
+  public static void main(String[] args)
+  {
+    int megapixels = 16;
+    if (args.length > 0)
+      megapixels = Integer.parseInt(args[0]);
+
+    int size = megapixels << 20;
+    int[] pixels = new int[size];
+    int[] other = new int[size];
+    Random random = new Random(42);
+    for (int i = 0; i < size; i++)
+    {
+      pixels[i] = random.nextInt() | 0xff000000;
+      other[i] = random.nextInt();
+    }
+    Picture picture = new Picture(PIXEL_ROWS,WIDTH);
+    Picture otherPicture = new Picture(PIXEL_ROWS,WIDTH);
+    picture.setBasicPixels(0,0,WIDTH,PIXEL_ROWS,pixels);
+    otherPicture.setBasicPixels(0,0,WIDTH,PIXEL_ROWS,other);
+
+    System.out.println("LowBits benchmark, " + megapixels + " megapixels, " +
+                       (LowBits.isVectorized() ? "vector loops loaded"
+                        : "no vector loops (see LowBitsVector)"));
+    long pixelCount = (long) PIXEL_ROWS * WIDTH;
+    compare("clear",() -> pixelClear(picture,otherPicture),pixelCount,
+            () -> {
+              for (int from = 0; from < size; from += WIDTH)
+                SCALAR.maskOr(pixels,from,from + WIDTH,~LowBits.MASK,0);
+            },
+            () -> {
+              for (int from = 0; from < size; from += WIDTH)
+                LowBits.clear(pixels,from,from + WIDTH);
+            },size);
+
+    // hidePicture hides rows that start at the same index
+    compare("set",() -> pixelSet(picture,otherPicture),pixelCount,
+            () -> {
+              for (int from = 0; from < size; from += WIDTH)
+                SCALAR.setHigh(pixels,from,from + WIDTH,other,from,LowBits.MASK,6);
+            },
+            () -> {
+              for (int from = 0; from < size; from += WIDTH)
+                LowBits.set(pixels,from,from + WIDTH,other,from);
+            },size);
+    compare("reveal",() -> pixelReveal(picture,otherPicture),pixelCount,
+            () -> {
+              for (int from = 0; from < size; from += WIDTH)
+                SCALAR.reveal(pixels,from,from + WIDTH,LowBits.MASK,6);
+            },
+            () -> {
+              for (int from = 0; from < size; from += WIDTH)
+                LowBits.reveal(pixels,from,from + WIDTH);
+            },size);
+
+    // the stego streams hide codes that start anywhere in a row, so
+    // the codes are one past the start of each row (and the last row
+    // is left out)
+    for (int i = 0; i < size; i++)
+      other[i] &= 0x3f;
+    compare("codes",() -> pixelCodes(picture,otherPicture),pixelCount,
+            () -> {
+              for (int from = 0; from + WIDTH < size; from += WIDTH)
+                SCALAR.setCodes(pixels,from,from + WIDTH,other,from + 1,2);
+            },
+            () -> {
+              for (int from = 0; from + WIDTH < size; from += WIDTH)
+                LowBits.setCodes(pixels,from,from + WIDTH,other,from + 1);
+            },size - WIDTH);
+  }
+
+}
@@ -40,6 +40,18 @@ public class Picture extends SimplePicture
         super(fileName);
     }
 
+    /**
+     * Constructor that takes a file name and loads only part of it
+     * @param fileName the name of the file to create the picture from
+     * @param region the part of the file to load (null for all of it)
+     * @param xSubsampling use every xSubsampling'th column (1 for all)
+     * @param ySubsampling use every ySubsampling'th row (1 for all)
+     */
+    public Picture(String fileName, Rectangle region, int xSubsampling, int ySubsampling)
+    {
+        super(fileName,region,xSubsampling,ySubsampling);
+    }
+
     /**
      * Constructor that takes the width and height
      * @param height the height of the desired picture
@@ -90,14 +102,7 @@ public class Picture extends SimplePicture
     /** Method to set the blue to 0 */
     public void zeroBlue()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        for (Pixel[] rowArray : pixels)
-        {
-            for (Pixel pixelObj : rowArray)
-            {
-                pixelObj.setBlue(0);
-            }
-        }
+        this.forEachPixel(value -> value & 0xffffff00);
     }
 
     /** Method that mirrors the picture around a 
@@ -105,43 +110,41 @@ public class Picture extends SimplePicture
      * from left to right */
     public void mirrorVertical()
     {
-        Pixel[][] pixels = this.getPixels2D();
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        int width = pixels[0].length;
-        for (int row = 0; row < pixels.length; row++)
-        {
-            for (int col = 0; col < width / 2; col++)
+        int width = this.getWidth();
+        BandExecutor.getDefault().forEachBand(this, (startRow, endRow) -> {
+            int[] pixels = new int[width];
+            for (int row = startRow; row < endRow; row++)
             {
-                leftPixel = pixels[row][col];
-                rightPixel = pixels[row][width - 1 - col];
-                rightPixel.setColor(leftPixel.getColor());
+                this.getBasicRow(row, pixels);
+                for (int col = 0; col < width / 2; col++)
+                {
+                    pixels[width - 1 - col] = copyColor(pixels[col], pixels[width - 1 - col]);
+                }
+                this.setBasicRow(row, pixels);
             }
-        } 
+        });
+    }
+
+    /**
+     * Method to give a packed pixel value the color of another one
+     * while keeping its own alpha, like Pixel.setColor does
+     * @param from the pixel value to take the color from
+     * @param to the pixel value to take the alpha from
+     * @return the new pixel value
+     */
+    private static int copyColor(int from, int to)
+    {
+        return (to & 0xff000000) | (from & 0xffffff);
     }
 
     /** Mirror just part of a picture of a temple */
     public void mirrorTemple()
     {
         int mirrorPoint = 276;
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        int count = 0;
-        Pixel[][] pixels = this.getPixels2D();
-
-        // loop through the rows
-        for (int row = 27; row < 97; row++)
-        {
-            // loop from 13 to just before the mirror point
-            for (int col = 13; col < mirrorPoint; col++)
-            {
 
-                leftPixel = pixels[row][col];      
-                rightPixel = pixels[row]                       
-                [mirrorPoint - col + mirrorPoint];
-                rightPixel.setColor(leftPixel.getColor());
-            }
-        }
+        // mirror rows 27 to 96 from column 13 around the mirror point
+        int left = 13;
+        this.view(left, 27, 2 * (mirrorPoint - left) + 1, 97 - 27).mirrorVertical();
     }
 
     /** copy from the passed fromPic to the
@@ -153,25 +156,26 @@ public class Picture extends SimplePicture
      */
     public void copy(Picture fromPic, int startRow, int startCol)
     {
-        Pixel fromPixel = null;
-        Pixel toPixel = null;
-        Pixel[][] toPixels = this.getPixels2D();
-        Pixel[][] fromPixels = fromPic.getPixels2D();
-        for (int fromRow = 0, toRow = startRow; 
-        fromRow < fromPixels.length &&
-        toRow < toPixels.length; 
-        fromRow++, toRow++)
-        {
-            for (int fromCol = 0, toCol = startCol; 
-            fromCol < fromPixels[0].length &&
-            toCol < toPixels[0].length;  
-            fromCol++, toCol++)
+        int rows = Math.min(fromPic.getHeight(), this.getHeight() - startRow);
+        int cols = Math.min(fromPic.getWidth(), this.getWidth() - startCol);
+        if (rows <= 0 || cols <= 0)
+            return;
+        BandExecutor.getDefault().forEachBand(cols, rows, (firstRow, endRow) -> {
+            int[] fromPixels = new int[cols];
+            int[] toPixels = new int[cols];
+            for (int fromRow = firstRow, toRow = startRow + firstRow; 
+            fromRow < endRow; 
+            fromRow++, toRow++)
             {
-                fromPixel = fromPixels[fromRow][fromCol];
-                toPixel = toPixels[toRow][toCol];
-                toPixel.setColor(fromPixel.getColor());
+                fromPic.getBasicPixels(0, fromRow, cols, 1, fromPixels);
+                this.getBasicPixels(startCol, toRow, cols, 1, toPixels);
+                for (int col = 0; col < cols; col++)
+                {
+                    toPixels[col] = copyColor(fromPixels[col], toPixels[col]);
+                }
+                this.setBasicPixels(startCol, toRow, cols, 1, toPixels);
             }
-        }   
+        });
     }
 
     /** Method to create a collage of several pictures */
@@ -196,25 +200,36 @@ public class Picture extends SimplePicture
      */
     public void edgeDetection(int edgeDist)
     {
-        Pixel leftPixel = null;
-        Pixel rightPixel = null;
-        Pixel[][] pixels = this.getPixels2D();
-        Color rightColor = null;
-        for (int row = 0; row < pixels.length; row++)
-        {
-            for (int col = 0; 
-            col < pixels[0].length-1; col++)
+        int width = this.getWidth();
+        int black = Color.BLACK.getRGB();
+        int white = Color.WHITE.getRGB();
+
+        // compare squared distances so there is no square root to take
+        long edgeDist2 = (long) edgeDist * edgeDist;
+        BandExecutor.getDefault().forEachBand(this, (startRow, endRow) -> {
+            int[] pixels = new int[width];
+            for (int row = startRow; row < endRow; row++)
             {
-                leftPixel = pixels[row][col];
-                rightPixel = pixels[row][col+1];
-                rightColor = rightPixel.getColor();
-                if (leftPixel.colorDistance(rightColor) > 
-                edgeDist)
-                    leftPixel.setColor(Color.BLACK);
-                else
-                    leftPixel.setColor(Color.WHITE);
+                this.getBasicRow(row, pixels);
+                for (int col = 0; 
+                col < width-1; col++)
+                {
+                    int left = pixels[col];
+                    int right = pixels[col+1];
+                    int redDistance = Pixel.getRed(left) - Pixel.getRed(right);
+                    int greenDistance = Pixel.getGreen(left) - Pixel.getGreen(right);
+                    int blueDistance = Pixel.getBlue(left) - Pixel.getBlue(right);
+                    int distance2 = redDistance * redDistance +
+                        greenDistance * greenDistance +
+                        blueDistance * blueDistance;
+                    if (edgeDist < 0 || distance2 > edgeDist2)
+                        pixels[col] = copyColor(black, left);
+                    else
+                        pixels[col] = copyColor(white, left);
+                }
+                this.setBasicRow(row, pixels);
             }
-        }
+        });
     }
 
     /* Main method for testing - each class in Java can have a main 
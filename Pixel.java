@@ -211,19 +211,54 @@ public class Pixel
     return new Color(red,green,blue);
   }
   
+  /**
+   * Method to get the color at this pixel as a packed int with
+   * alpha, red, green, blue each taking 8 bits from left to right
+   * @return the pixel value as an int
+   */
+  public int getRGB()
+  {
+    return picture.getBasicPixel(x,y);
+  }
+  
   /**
    * Method to set the pixel color to the passed in color object.
    * @param newColor the new color to use
    */
   public void setColor(Color newColor) 
   {
-    // set the red, green, and blue values
-    int red = newColor.getRed();
-    int green = newColor.getGreen();
-    int blue = newColor.getBlue();
+    // update the associated picture with the red, green, and blue values
+    setRGB(newColor.getRGB());
+  }
+  
+  /**
+   * Method to set the red, green, and blue at this pixel from a 
+   * packed int.  The alpha in the passed value is ignored and the 
+   * pixel keeps its own alpha.
+   * @param rgb the new color as an int (red, green, blue)
+   */
+  public void setRGB(int rgb)
+  {
+    // pictures without alpha are always 255 so there is nothing to read
+    int alpha = 0xff000000;
+    if (picture.hasAlpha())
+      alpha = picture.getBasicPixel(x,y) & 0xff000000;
     
-    // update the associated picture
-    updatePicture(this.getAlpha(),red,green,blue);
+    // update the picture with the int value
+    picture.setBasicPixel(x,y,alpha | (rgb & 0xffffff));
+  }
+  
+  /**
+   * Method to set the red, green, and blue at this pixel.  The 
+   * pixel keeps its own alpha.
+   * @param red the new red value (kept within 0 to 255)
+   * @param green the new green value (kept within 0 to 255)
+   * @param blue the new blue value (kept within 0 to 255)
+   */
+  public void setRGB(int red, int green, int blue)
+  {
+    setRGB((correctValue(red) << 16) | (correctValue(green) << 8) |
+           correctValue(blue));
   }
   
   /**
@@ -267,7 +302,8 @@ public class Pixel
     int red = correctValue(value);
     
     // update the pixel value in the picture
-    updatePicture(getAlpha(), red, getGreen(), getBlue());
+    int rgb = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,(rgb & 0xff00ffff) | (red << 16));
   } 
   
   /**
@@ -280,7 +316,8 @@ public class Pixel
     int green = correctValue(value);
     
     // update the pixel value in the picture
-    updatePicture(getAlpha(), getRed(), green, getBlue());
+    int rgb = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,(rgb & 0xffff00ff) | (green << 8));
   } 
   
   /**
@@ -293,7 +330,8 @@ public class Pixel
     int blue = correctValue(value);
     
     // update the pixel value in the picture
-    updatePicture(getAlpha(), getRed(), getGreen(), blue);
+    int rgb = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,(rgb & 0xffffff00) | blue);
   } 
   
    /**
@@ -306,7 +344,8 @@ public class Pixel
     int alpha = correctValue(value);
     
     // update the associated picture
-    updatePicture(alpha, getRed(), getGreen(), getBlue());
+    int rgb = picture.getBasicPixel(x,y);
+    picture.setBasicPixel(x,y,(alpha << 24) | (rgb & 0xffffff));
   } 
   
   /**
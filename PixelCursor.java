@@ -0,0 +1,272 @@
+/**
+ * Class that walks over the pixels of a picture without creating a
+ * Pixel object for each one.  A pixel cursor is a reusable, movable
+ * pixel: it holds one row of packed pixel values at a time, so reading
+ * and changing the color at the cursor doesn't touch the picture until
+ * the cursor moves to a new row or is flushed.
+ *
+ * A typical loop looks like:
+ * <pre>
+ *   PixelCursor cursor = new PixelCursor(picture);
+ *   while (cursor.next())
+ *     cursor.setBlue(0);
+ * </pre>
+ * next() writes the last row back when it runs off the end of the
+ * picture.  If you stop early (or use moveTo) call flush() when done.
+ */
+public class PixelCursor
+{
+
+  ////////////////////////// fields ///////////////////////////////////
+
+  /** the digital picture this cursor walks over */
+  private DigitalPicture picture;
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** the packed pixel values for the buffered row */
+  private int[] row;
+
+  /** the row that is in the buffer (-1 for none) */
+  private int bufferedRow = -1;
+
+  /** one past the rightmost changed x in the buffered row (0 for none) */
+  private int dirtyEnd;
+
+  /** the x (column) location of the cursor */
+  private int x;
+
+  /** the y (row) location of the cursor */
+  private int y;
+
+  ////////////////////// constructors /////////////////////////////////
+
+  /**
+   * A constructor that takes the picture to walk over.  The cursor
+   * starts just before the top left pixel so that the first call
+   * to next() moves it to (0,0).
+   * @param picture the picture to walk over
+   */
+  public PixelCursor(DigitalPicture picture)
+  {
+    this.picture = picture;
+    this.width = picture.getWidth();
+    this.height = picture.getHeight();
+    this.row = new int[width];
+    this.x = -1;
+    this.y = 0;
+  }
+
+  ///////////////////////// methods //////////////////////////////
+
+  /**
+   * Method to move to the next pixel in row-major order (left to
+   * right, then top to bottom)
+   * @return true if the cursor is on a pixel, false if it has gone
+   * past the last pixel (any changes have been written back by then)
+   */
+  public boolean next()
+  {
+    if (width == 0)
+      return false;
+
+    x++;
+    if (x >= width)
+    {
+      x = 0;
+      y++;
+    }
+
+    if (y >= height)
+    {
+      x = width;
+      y = height;
+      flush();
+      return false;
+    }
+
+    bufferRow();
+    return true;
+  }
+
+  /**
+   * Method to move the cursor to the given location
+   * @param x the x (column) to move to
+   * @param y the y (row) to move to
+   */
+  public void moveTo(int x, int y)
+  {
+    if (x < 0 || y < 0 || x >= width || y >= height)
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+    this.x = x;
+    this.y = y;
+    bufferRow();
+  }
+
+  /**
+   * Method to write any changed pixels in the buffered row back to
+   * the picture
+   */
+  public void flush()
+  {
+    // unchanged pixels left of the last change are written back too,
+    // which is cheaper than tracking (or copying out) the changed span
+    if (dirtyEnd > 0)
+      picture.setBasicPixels(0,bufferedRow,dirtyEnd,1,row);
+    dirtyEnd = 0;
+  }
+
+  /**
+   * Method to make sure the row the cursor is on is in the buffer
+   */
+  private void bufferRow()
+  {
+    if (bufferedRow != y)
+    {
+      flush();
+      picture.getBasicRow(y,row);
+      bufferedRow = y;
+    }
+  }
+
+  /**
+   * Method to get the x location of the cursor
+   * @return the x location of the cursor
+   */
+  public int getX() { return x; }
+
+  /**
+   * Method to get the y location of the cursor
+   * @return the y location of the cursor
+   */
+  public int getY() { return y; }
+
+  /**
+   * Method to get the row (y value)
+   * @return the row (y value) of the cursor
+   */
+  public int getRow() { return y; }
+
+  /**
+   * Method to get the column (x value)
+   * @return the column (x value) of the cursor
+   */
+  public int getCol() { return x; }
+
+  /**
+   * Method to get the picture this cursor walks over
+   * @return the picture
+   */
+  public DigitalPicture getPicture() { return picture; }
+
+  /**
+   * Method to get the color at the cursor as a packed int
+   * @return the pixel value (alpha, red, green, blue)
+   */
+  public int getRGB() { return row[x]; }
+
+  /**
+   * Method to get the amount of alpha (transparency) at the cursor
+   * @return the amount of alpha from 0 to 255
+   */
+  public int getAlpha() { return (row[x] >> 24) & 0xff; }
+
+  /**
+   * Method to get the amount of red at the cursor
+   * @return the amount of red from 0 to 255
+   */
+  public int getRed() { return (row[x] >> 16) & 0xff; }
+
+  /**
+   * Method to get the amount of green at the cursor
+   * @return the amount of green from 0 to 255
+   */
+  public int getGreen() { return (row[x] >> 8) & 0xff; }
+
+  /**
+   * Method to get the amount of blue at the cursor
+   * @return the amount of blue from 0 to 255
+   */
+  public int getBlue() { return row[x] & 0xff; }
+
+  /**
+   * Method to set the red, green, and blue at the cursor from a
+   * packed int.  The alpha in the passed value is ignored and the
+   * pixel keeps its own alpha, like Pixel.setRGB.
+   * @param rgb the new color as an int (red, green, blue)
+   */
+  public void setRGB(int rgb)
+  {
+    row[x] = (row[x] & 0xff000000) | (rgb & 0xffffff);
+    if (x >= dirtyEnd)
+      dirtyEnd = x + 1;
+  }
+
+  /**
+   * Method to set the red, green, and blue at the cursor.  The alpha
+   * stays the same.  Each value is kept within 0 to 255.
+   * @param red the new amount of red
+   * @param green the new amount of green
+   * @param blue the new amount of blue
+   */
+  public void setRGB(int red, int green, int blue)
+  {
+    setRGB((correctValue(red) << 16) | (correctValue(green) << 8) |
+           correctValue(blue));
+  }
+
+  /**
+   * Method to set the red at the cursor
+   * @param value the new amount of red (kept within 0 to 255)
+   */
+  public void setRed(int value)
+  {
+    setRGB((row[x] & 0xff00ffff) | (correctValue(value) << 16));
+  }
+
+  /**
+   * Method to set the green at the cursor
+   * @param value the new amount of green (kept within 0 to 255)
+   */
+  public void setGreen(int value)
+  {
+    setRGB((row[x] & 0xffff00ff) | (correctValue(value) << 8));
+  }
+
+  /**
+   * Method to set the blue at the cursor
+   * @param value the new amount of blue (kept within 0 to 255)
+   */
+  public void setBlue(int value)
+  {
+    setRGB((row[x] & 0xffffff00) | correctValue(value));
+  }
+
+  /**
+   * Method to correct a color value to be within 0 to 255
+   * @param value the value to use
+   * @return a value within 0 to 255
+   */
+  private static int correctValue(int value)
+  {
+    if (value < 0)
+      value = 0;
+    if (value > 255)
+      value = 255;
+    return value;
+  }
+
+  /**
+   * Method to return a string with information about the cursor
+   * @return a string with information about the cursor
+   */
+  public String toString()
+  {
+    return "PixelCursor row=" + y + " col=" + x;
+  }
+
+}
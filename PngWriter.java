@@ -0,0 +1,167 @@
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Class that writes pictures as PNG files.  PNG is lossless, so the
+ * low bits of every pixel (and any payload hidden in them) are saved
+ * exactly.  The PNG writer plugin is found once, instead of being
+ * looked up every time like ImageIO.write does, and each write gets its
+ * own ImageWriter from it, so one PngWriter can write many files on
+ * different threads at the same time.
+ *
+ * The compression level goes from 0 (fastest, biggest files) to 9
+ * (slowest, smallest files).
+ */
+public class PngWriter
+{
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the compression level used when none is given */
+  public static final int DEFAULT_LEVEL = 6;
+
+  /** the writer used by SimplePicture */
+  private static volatile PngWriter defaultWriter = new PngWriter(DEFAULT_LEVEL);
+
+  /** the plugin that makes PNG image writers */
+  private ImageWriterSpi provider;
+
+  /** the compression level (0 to 9) */
+  private int level;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the compression level
+   * @param level the compression level (0 is fastest, 9 is smallest)
+   */
+  public PngWriter(int level)
+  {
+    if (level < 0 || level > 9)
+      throw new IllegalArgumentException("compression level must be from 0 to 9, not " + level);
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+    if (!writers.hasNext())
+      throw new IllegalStateException("no PNG image writer is available");
+    ImageWriter writer = writers.next();
+    this.provider = writer.getOriginatingProvider();
+    this.level = level;
+    writer.dispose();
+    if (provider == null)
+      throw new IllegalStateException("the PNG image writer has no provider");
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to get the writer that SimplePicture uses for PNG files
+   * @return the default writer
+   */
+  public static PngWriter getDefault() { return defaultWriter; }
+
+  /**
+   * Method to change the writer that SimplePicture uses for PNG files
+   * (for example to use a faster compression level)
+   * @param writer the new default writer
+   */
+  public static synchronized void setDefault(PngWriter writer)
+  {
+    defaultWriter = writer;
+  }
+
+  /**
+   * Method to get the compression level
+   * @return the compression level (0 to 9)
+   */
+  public int getLevel() { return level; }
+
+  /**
+   * Method to tell if a file extension is for a lossless format, which
+   * keeps the exact color of every pixel
+   * @param extension the extension (like "png" or "jpg")
+   * @return true for png, bmp, tif, and raw (praw) files
+   */
+  public static boolean isLossless(String extension)
+  {
+    if (extension == null)
+      return false;
+    String ext = extension.toLowerCase();
+    return ext.equals("png") || ext.equals("bmp") ||
+      ext.equals("tif") || ext.equals("tiff") ||
+      ext.equals(RawImageFile.EXTENSION);
+  }
+
+  /**
+   * Method to write an image to a PNG file.  The image is written to a
+   * new file in the same directory first and then moved over the old
+   * file, so if the write fails the old file is still there.  This can
+   * be called on several threads at once.
+   * @param image the image to write
+   * @param file the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public void write(RenderedImage image, File file) throws IOException
+  {
+    FileReplacer.replace(file,temp -> {
+      ImageOutputStream output = ImageIO.createImageOutputStream(temp);
+      if (output == null)
+        throw new IOException(temp + " could not be opened for writing");
+      ImageWriter writer = provider.createWriterInstance();
+      try
+      {
+        writer.setOutput(output);
+        writer.write(null,new IIOImage(image,null,null),createParam(writer));
+      }
+      finally
+      {
+        writer.dispose();
+        output.close();
+      }
+    });
+  }
+
+  /**
+   * Method to make the parameters with the compression level for an
+   * image writer
+   * @param writer the image writer
+   * @return the parameters to write with
+   */
+  private ImageWriteParam createParam(ImageWriter writer)
+  {
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (param.canWriteCompressed())
+    {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(1.0f - level / 9.0f);
+    }
+    return param;
+  }
+
+  /**
+   * Method to write a picture to a PNG file
+   * @param picture the picture to write
+   * @param file the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public void write(DigitalPicture picture, File file) throws IOException
+  {
+    write(picture.getBufferedImage(),file);
+  }
+
+  /**
+   * Method to return a string with information about this writer
+   * @return a string with the compression level
+   */
+  public String toString()
+  {
+    return "PngWriter level " + level;
+  }
+
+}
@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class that tests writing PNG files with PngWriter.  Run it like any
+ * other class:
+ * <pre>
+ *   java PngWriterTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.  The files are made in
+ * a new temporary directory that is deleted at the end.
+ */
+public class PngWriterTest
+{
+
+  /** the directory the test files are made in */
+  private static File dir;
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that a PNG file reads back with the same pixels at
+   * the fastest and smallest levels
+   * @throws IOException if a test file can't be written or read
+   */
+  public static void testRoundTrip() throws IOException
+  {
+    for (int level : new int[] {0, 9})
+    {
+      Picture picture = RawImageFileTest.makePicture(50,30,true);
+      File file = new File(dir,"level" + level + ".png");
+      new PngWriter(level).write(picture,file);
+      check(RawImageFileTest.samePixels(picture,new Picture(file.getPath())),
+            "the pixels changed at level " + level);
+    }
+  }
+
+  /**
+   * Method to test that one writer can write many files at the same
+   * time on different threads
+   * @throws Exception if a write fails or the wait is interrupted
+   */
+  public static void testWritesAtOnce() throws Exception
+  {
+    PngWriter writer = new PngWriter(1);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try
+    {
+      List<Future<?>> writes = new ArrayList<Future<?>>();
+      Picture[] pictures = new Picture[8];
+      for (int i = 0; i < pictures.length; i++)
+      {
+        Picture picture = RawImageFileTest.makePicture(120 + i,80,i % 2 == 0);
+        File file = new File(dir,"thread" + i + ".png");
+        pictures[i] = picture;
+        writes.add(pool.submit(() -> { writer.write(picture,file); return null; }));
+      }
+      for (Future<?> write : writes)
+        write.get();
+      for (int i = 0; i < pictures.length; i++)
+        check(RawImageFileTest.samePixels(pictures[i],
+                new Picture(new File(dir,"thread" + i + ".png").getPath())),
+              "file " + i + " doesn't have its picture");
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws Exception if a test file can't be made or a wait is interrupted
+   */
+  public static void main(String[] args) throws Exception
+  {
+    dir = Files.createTempDirectory("png").toFile();
+    try
+    {
+      testRoundTrip();
+      System.out.println("testRoundTrip passed");
+      testWritesAtOnce();
+      System.out.println("testWritesAtOnce passed");
+    }
+    finally
+    {
+      for (File file : dir.listFiles())
+        file.delete();
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,242 @@
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that reads and writes pictures in a simple raw format that
+ * needs no decoding.  A raw file (extension "praw") has a 16 byte
+ * header (the magic number, width, height, and image type as little
+ * endian ints) followed by the packed pixels, one little endian int
+ * per pixel in row-major order.
+ *
+ * Reading maps the file into memory, so opening even a huge file takes
+ * almost no time and the pixels are paged in as they are used.  
+ * Changes to the picture are never written back to the file.  A file
+ * that can be written gets a private (copy-on-write) mapping.  A
+ * private mapping needs a channel that can write, so a read-only file
+ * is mapped read-only instead, and SimplePicture copies its pixels
+ * before changing them.
+ */
+public class RawImageFile
+{
+
+  /////////////////////////// constants ////////////////////////////////
+
+  /** the file extension for raw pictures */
+  public static final String EXTENSION = "praw";
+
+  /** the first int of a raw file ("PRAW") */
+  public static final int MAGIC = 0x57415250;
+
+  /** the number of bytes before the pixels */
+  public static final int HEADER_BYTES = 16;
+
+  /** the number of pixels written at a time */
+  private static final int CHUNK_PIXELS = 1 << 16;
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to tell if a file name is for a raw picture
+   * @param fileName the file name
+   * @return true if it ends with .praw
+   */
+  public static boolean isRawFile(String fileName)
+  {
+    return fileName.toLowerCase().endsWith("." + EXTENSION);
+  }
+
+  /**
+   * Method to read a raw picture file by mapping it into memory
+   * @param file the file to read
+   * @return a buffered image whose pixels are in the mapped file (the
+   * int buffer is read-only if the file can't be written)
+   * @throws IOException if the file can't be read or isn't a raw file
+   */
+  public static BufferedImage read(File file) throws IOException
+  {
+    // a private mapping needs a channel opened for writing too, but
+    // nothing is ever written to the file through it
+    boolean writable = Files.isWritable(file.toPath());
+    try (FileChannel channel = writable
+           ? FileChannel.open(file.toPath(),StandardOpenOption.READ,StandardOpenOption.WRITE)
+           : FileChannel.open(file.toPath(),StandardOpenOption.READ))
+    {
+      long size = channel.size();
+      if (size < HEADER_BYTES)
+        throw new IOException(file + " is not a raw picture file");
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header) >= 0)
+        ;
+      header.flip();
+      int magic = header.getInt();
+      int width = header.getInt();
+      int height = header.getInt();
+      int type = header.getInt();
+      if (magic != MAGIC || width <= 0 || height <= 0 ||
+          (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB))
+        throw new IOException(file + " is not a raw picture file");
+
+      long pixels = (long) width * height;
+      if (pixels > (Integer.MAX_VALUE - HEADER_BYTES) / 4)
+        throw new IOException(file + " is too big to map (" + width + "x" + height + ")");
+      if (size < HEADER_BYTES + pixels * 4)
+        throw new IOException(file + " is missing some of its pixels");
+
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer mapped = channel.map(writable ? FileChannel.MapMode.PRIVATE
+                                                     : FileChannel.MapMode.READ_ONLY,
+                                            HEADER_BYTES,pixels * 4);
+      IntBuffer ints = mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      return createImage(ints,width,height,type == BufferedImage.TYPE_INT_ARGB);
+    }
+  }
+
+  /**
+   * Method to make a buffered image that keeps its pixels in an int
+   * buffer
+   * @param ints the buffer with width * height packed pixels
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param alpha true if the pixels have alpha (like TYPE_INT_ARGB)
+   * @return the buffered image
+   */
+  public static BufferedImage createImage(IntBuffer ints, int width,
+                                          int height, boolean alpha)
+  {
+    return createImage(new IntBufferDataBuffer(ints,width * height),width,height,alpha);
+  }
+
+  /**
+   * Method to make a buffered image that keeps its pixels in an int
+   * buffer data buffer (like one holding off-heap memory)
+   * @param dataBuffer the data buffer with width * height packed pixels
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param alpha true if the pixels have alpha (like TYPE_INT_ARGB)
+   * @return the buffered image
+   */
+  public static BufferedImage createImage(IntBufferDataBuffer dataBuffer, int width,
+                                          int height, boolean alpha)
+  {
+    int alphaMask = alpha ? 0xff000000 : 0;
+    DirectColorModel colorModel =
+      new DirectColorModel(alpha ? 32 : 24,0xff0000,0xff00,0xff,alphaMask);
+    int[] masks = alpha ? new int[] {0xff0000,0xff00,0xff,0xff000000}
+                        : new int[] {0xff0000,0xff00,0xff};
+    SinglePixelPackedSampleModel sampleModel =
+      new SinglePixelPackedSampleModel(IntBufferDataBuffer.TYPE_INT,width,height,masks);
+    WritableRaster raster = Raster.createWritableRaster(sampleModel,dataBuffer,new Point(0,0));
+    return new BufferedImage(colorModel,raster,false,null);
+  }
+
+  /**
+   * Method to write a picture to a raw file.  The picture is written to
+   * a new file that is then moved over the old one (see FileReplacer),
+   * so a picture can be written back to the file it was mapped from.
+   * @param picture the picture to write
+   * @param file the file to write to
+   * @throws IOException if the file can't be written
+   */
+  public static void write(DigitalPicture picture, File file) throws IOException
+  {
+    boolean alpha = picture.hasAlpha();
+    FileReplacer.replace(file,temp -> {
+      try (FileChannel channel = create(temp,picture.getWidth(),picture.getHeight(),alpha))
+      {
+        writeRows(channel,picture,0,picture.getHeight());
+      }
+    });
+  }
+
+  /**
+   * Method to create a raw file and write its header.  The rows must
+   * then be written in order with writeRows.  Any old file is truncated,
+   * so don't call this on a file that may be mapped (use FileReplacer).
+   * @param file the file to write to
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param alpha true if the pixels have alpha
+   * @return the channel to write the rows to (the caller closes it)
+   * @throws IOException if the file can't be written
+   */
+  static FileChannel create(File file, int width, int height, boolean alpha)
+    throws IOException
+  {
+    FileChannel channel = FileChannel.open(file.toPath(),StandardOpenOption.WRITE,
+                                           StandardOpenOption.CREATE,
+                                           StandardOpenOption.TRUNCATE_EXISTING);
+    try
+    {
+      ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      bytes.putInt(MAGIC).putInt(width).putInt(height);
+      bytes.putInt(alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+      bytes.flip();
+      writeFully(channel,bytes);
+      return channel;
+    }
+    catch (IOException ex)
+    {
+      channel.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Method to write rows of a picture to a raw file after the rows
+   * that are already in it
+   * @param channel the channel from create
+   * @param picture the picture to get the rows from
+   * @param startRow the first row to write
+   * @param endRow one past the last row to write
+   * @throws IOException if the file can't be written
+   */
+  static void writeRows(FileChannel channel, DigitalPicture picture,
+                        int startRow, int endRow) throws IOException
+  {
+    int width = picture.getWidth();
+    ByteBuffer bytes = ByteBuffer.allocateDirect(Math.min(width,CHUNK_PIXELS) * 4);
+    bytes.order(ByteOrder.LITTLE_ENDIAN);
+    IntBuffer ints = bytes.asIntBuffer();
+
+    // write a row (or part of one) at a time
+    int[] pixels = new int[width];
+    for (int row = startRow; row < endRow; row++)
+    {
+      picture.getBasicRow(row,pixels);
+      for (int col = 0; col < width; col += CHUNK_PIXELS)
+      {
+        int n = Math.min(CHUNK_PIXELS,width - col);
+        ints.clear();
+        ints.put(pixels,col,n);
+        bytes.clear().limit(n * 4);
+        writeFully(channel,bytes);
+      }
+    }
+  }
+
+  /**
+   * Method to write all of a byte buffer to a channel
+   * @param channel the channel to write to
+   * @param bytes the bytes to write
+   * @throws IOException if the write fails
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException
+  {
+    while (bytes.hasRemaining())
+      channel.write(bytes);
+  }
+
+}
@@ -0,0 +1,176 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Class that tests reading and writing raw (praw) picture files.  Run
+ * it like any other class:
+ * <pre>
+ *   java RawImageFileTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.  The files are made in
+ * a new temporary directory that is deleted at the end.
+ */
+public class RawImageFileTest
+{
+
+  /** the directory the test files are made in */
+  private static File dir;
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to make a picture with a different color at every pixel
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param alpha true to give the pixels alpha too
+   * @return the new picture
+   */
+  static Picture makePicture(int width, int height, boolean alpha)
+  {
+    int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    Picture picture = new Picture(new BufferedImage(width,height,type));
+    for (int y = 0; y < height; y++)
+      for (int x = 0; x < width; x++)
+        picture.setBasicPixel(x,y,(alpha ? (x * 7) << 24 : 0) | (y << 12) | x * 31);
+    return picture;
+  }
+
+  /**
+   * Method to tell if two pictures have the same size and pixels
+   * (alpha and all)
+   * @param p1 the first picture
+   * @param p2 the second picture
+   * @return true if they match
+   */
+  static boolean samePixels(Picture p1, Picture p2)
+  {
+    if (p1.getWidth() != p2.getWidth() || p1.getHeight() != p2.getHeight())
+      return false;
+    for (int y = 0; y < p1.getHeight(); y++)
+      for (int x = 0; x < p1.getWidth(); x++)
+        if (p1.getBasicPixel(x,y) != p2.getBasicPixel(x,y))
+          return false;
+    return true;
+  }
+
+  /**
+   * Method to get the path of a test file
+   * @param name the name of the file
+   * @return the path in the test directory
+   */
+  private static String path(String name)
+  {
+    return new File(dir,name).getPath();
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that a raw file reads back with the same pixels,
+   * with and without alpha
+   * @throws IOException if a test file can't be written or read
+   */
+  public static void testRoundTrip() throws IOException
+  {
+    for (boolean alpha : new boolean[] {false, true})
+    {
+      Picture picture = makePicture(70,40,alpha);
+      String name = path("round" + alpha + ".praw");
+      picture.writeOrFail(name);
+      Picture read = new Picture(name);
+      check(read.hasAlpha() == alpha,"alpha wasn't kept");
+      check(samePixels(picture,read),"the pixels changed (alpha " + alpha + ")");
+      check(ImageInfo.probe(name).getWidth() == 70,"the header has the wrong width");
+    }
+  }
+
+  /**
+   * Method to test that changes to a mapped picture don't go to the
+   * file until it is written
+   * @throws IOException if a test file can't be written or read
+   */
+  public static void testPrivateMapping() throws IOException
+  {
+    String name = path("private.praw");
+    makePicture(20,10,false).writeOrFail(name);
+    Picture p1 = new Picture(name);
+    p1.setBasicPixel(1,1,0x123456);
+    Picture p2 = new Picture(name);
+    check((p2.getBasicPixel(1,1) & 0xffffff) != 0x123456,
+          "a change went to the file without a write");
+  }
+
+  /**
+   * Method to test writing a picture back to the raw file it was mapped
+   * from (this used to truncate the file under the mapping, crash, and
+   * lose the pixels)
+   * @throws IOException if a test file can't be written or read
+   */
+  public static void testWriteBackToSameFile() throws IOException
+  {
+    String name = path("same.praw");
+    Picture original = makePicture(300,200,false);
+    original.writeOrFail(name);
+
+    Picture picture = new Picture(name);
+    picture.setBasicPixel(5,7,0xabcdef);
+    picture.writeOrFail(name);
+
+    // the picture still has all its pixels after the write
+    Picture expected = new Picture(original);
+    expected.setBasicPixel(5,7,0xabcdef);
+    check(samePixels(picture,expected),"the written picture lost pixels");
+
+    // and so does the file
+    Picture read = new Picture(name);
+    check(samePixels(read,expected),"the file doesn't have the new pixels");
+
+    // a second write and read works too
+    read.setBasicPixel(0,0,0x010203);
+    read.writeOrFail(name);
+    check((new Picture(name).getBasicPixel(0,0) & 0xffffff) == 0x010203,
+          "the second write was lost");
+    for (String file : dir.list())
+      check(!file.endsWith(".tmp"),"a temporary file was left behind");
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws IOException if a test file can't be made
+   */
+  public static void main(String[] args) throws IOException
+  {
+    dir = Files.createTempDirectory("praw").toFile();
+    try
+    {
+      testRoundTrip();
+      System.out.println("testRoundTrip passed");
+      testPrivateMapping();
+      System.out.println("testPrivateMapping passed");
+      testWriteBackToSameFile();
+      System.out.println("testWriteBackToSameFile passed");
+    }
+    finally
+    {
+      for (File file : dir.listFiles())
+        file.delete();
+      dir.delete();
+    }
+  }
+
+}
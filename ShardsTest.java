@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class that tests splitting a payload over several pictures with
+ * Steganography.hideShards and joining it again with revealShards.
+ * Run it like any other class:
+ * <pre>
+ *   java ShardsTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class ShardsTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to make carriers of different sizes
+   * @param count the number of carriers
+   * @return the new carriers
+   */
+  private static List<Picture> makeCarriers(int count)
+  {
+    List<Picture> carriers = new ArrayList<Picture>();
+    for (int i = 0; i < count; i++)
+      carriers.add(RawImageFileTest.makePicture(40 + i * 10,30,false));
+    return carriers;
+  }
+
+  /**
+   * Method to make bytes that are not all the same
+   * @param length the number of bytes
+   * @return the new bytes
+   */
+  private static byte[] makeBytes(int length)
+  {
+    byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Method to tell if something throws an IllegalArgumentException
+   * @param action the thing to run
+   * @return true if it threw one
+   */
+  private static boolean throwsIllegalArgument(Runnable action)
+  {
+    try
+    {
+      action.run();
+      return false;
+    }
+    catch (IllegalArgumentException ex)
+    {
+      return true;
+    }
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that the bytes come back at each depth, with the
+   * shards given in any order
+   */
+  public static void testRoundTrip()
+  {
+    List<Picture> carriers = makeCarriers(4);
+    for (int depth = 1; depth <= 4; depth++)
+    {
+      byte[] data = makeBytes((int) Steganography.getByteCapacity(carriers,depth) - 3);
+      ArrayList<Picture> shards = Steganography.hideShards(carriers,data,depth);
+      check(shards.size() == 4,"expected one shard per carrier");
+      Collections.reverse(shards);
+      check(Arrays.equals(Steganography.revealShards(shards),data),
+            "the bytes changed at depth " + depth);
+    }
+    ArrayList<Picture> shards = Steganography.hideTextShards(carriers,"Hello, shards",2);
+    Collections.swap(shards,0,2);
+    check(Steganography.revealTextShards(shards).equals("Hello, shards"),"the text changed");
+  }
+
+  /**
+   * Method to test that a payload too big for the carriers isn't split
+   */
+  public static void testTooBig()
+  {
+    List<Picture> carriers = makeCarriers(3);
+    byte[] data = makeBytes((int) Steganography.getByteCapacity(carriers,1) + 1);
+    check(throwsIllegalArgument(() -> Steganography.hideShards(carriers,data,1)),
+          "a payload that doesn't fit was hidden");
+    check(throwsIllegalArgument(() -> Steganography.hideShards(new ArrayList<Picture>(),
+                                                               new byte[1],1)),
+          "a payload was hidden in no carriers");
+  }
+
+  /**
+   * Method to test that missing, repeated, mixed up, and no shards are
+   * found instead of giving the wrong bytes
+   */
+  public static void testBadShards()
+  {
+    List<Picture> carriers = makeCarriers(3);
+    ArrayList<Picture> shards = Steganography.hideShards(carriers,makeBytes(100),1);
+    ArrayList<Picture> other = Steganography.hideShards(carriers,makeBytes(100),1);
+
+    List<Picture> missing = new ArrayList<Picture>(shards.subList(0,2));
+    check(throwsIllegalArgument(() -> Steganography.revealShards(missing)),
+          "a missing shard wasn't found");
+
+    List<Picture> twice = new ArrayList<Picture>(shards);
+    twice.set(2,shards.get(0));
+    check(throwsIllegalArgument(() -> Steganography.revealShards(twice)),
+          "a repeated shard wasn't found");
+
+    List<Picture> mixed = new ArrayList<Picture>(shards);
+    mixed.set(1,other.get(1));
+    check(throwsIllegalArgument(() -> Steganography.revealShards(mixed)),
+          "shards of two payloads were joined");
+
+    List<Picture> notShards = new ArrayList<Picture>(shards);
+    notShards.set(0,Steganography.hideText(carriers.get(0),"NOT A SHARD"));
+    check(throwsIllegalArgument(() -> Steganography.revealShards(notShards)),
+          "a picture without a shard was joined");
+
+    check(throwsIllegalArgument(() -> Steganography.revealShards(new ArrayList<Picture>())),
+          "no shards gave a payload");
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   */
+  public static void main(String[] args)
+  {
+    testRoundTrip();
+    System.out.println("testRoundTrip passed");
+    testTooBig();
+    System.out.println("testTooBig passed");
+    testBadShards();
+    System.out.println("testBadShards passed");
+  }
+
+}
@@ -1,9 +1,23 @@
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import javax.swing.ImageIcon;
 import java.awt.*;
 import java.io.*;
 import java.awt.geom.*;
+import java.lang.ref.WeakReference;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A class that represents a simple picture.  A simple picture may have
@@ -17,6 +31,24 @@ import java.awt.geom.*;
 public class SimplePicture implements DigitalPicture
 {
   
+  /////////////////////// Inner Types //////////////////////
+  
+  /**
+   * Interface for an operation that changes a row of packed pixel
+   * values in place
+   */
+  public interface RowOperator
+  {
+    /**
+     * Method to change the pixel values of one row
+     * @param pixels the array that holds the row
+     * @param offset the index of the first pixel of the row in the array
+     * @param length the number of pixels in the row
+     * @param row the row (y value) in the picture
+     */
+    public void apply(int[] pixels, int offset, int length, int row);
+  }
+  
   /////////////////////// Fields /////////////////////////
   
   /**
@@ -44,6 +76,79 @@ public class SimplePicture implements DigitalPicture
    */
   private String extension;
   
+  /**
+   * the packed int array behind the buffered image, or null if the
+   * buffered image doesn't keep one int per pixel
+   */
+  private int[] rasterData;
+  
+  /**
+   * the data buffer behind the buffered image when it keeps its pixels
+   * in an IntBufferDataBuffer (like a memory mapped raw file or off-heap
+   * memory), or null.  Its get and put methods hold off-heap memory
+   * while they use it, so it can't be freed under them.
+   */
+  private IntBufferDataBuffer rasterBuffer;
+  
+  /**
+   * index of pixel (0,0) in the raster data array (or buffer)
+   */
+  private int rasterOffset;
+  
+  /**
+   * distance in the raster data array from one row to the next
+   */
+  private int rasterStride;
+  
+  /**
+   * alpha bits to add to values read from the raster data (all 1's 
+   * for images that don't store alpha, like TYPE_INT_RGB)
+   */
+  private int alphaMask;
+  
+  /**
+   * true if the buffered image stores alpha (transparency)
+   */
+  private boolean alpha;
+  
+  /**
+   * the content hashes of the pixels, or null if they haven't been
+   * worked out since the pixels last changed
+   */
+  private ContentHash contentHash;
+  
+  /**
+   * true if a payload is hidden in the low bits of this picture, so it
+   * must only be written in a lossless format
+   */
+  private boolean carrier;
+  
+  /**
+   * true if the buffered image is shared (like with the ImageCache or a
+   * copy of this picture) or read-only, and must be copied before the
+   * pixels are changed
+   */
+  private volatile boolean shared;
+  
+  /**
+   * the views of this picture that may still be in use, or null if it
+   * has none (see view).  They are weak references, so a view that is
+   * dropped stops counting once the garbage collector finds it.
+   */
+  private ArrayList<WeakReference<SimplePicture>> views;
+  
+  /**
+   * the picture this is a view of, or null if it isn't a view
+   */
+  private SimplePicture parent;
+  
+  /**
+   * true if the buffered image, a graphics object that draws on it, or
+   * the raster data has been handed out, so the pixels can change
+   * without this class knowing
+   */
+  private boolean exposed;
+  
  
  /////////////////////// Constructors /////////////////////////
  
@@ -72,6 +177,20 @@ public class SimplePicture implements DigitalPicture
    
  }
  
+ /**
+  * A Constructor that takes a file name and loads only part of the
+  * file (see load(String,Rectangle,int,int))
+  * @param fileName the file name to use in creating the picture
+  * @param region the part of the file to load (null for all of it)
+  * @param xSubsampling use every xSubsampling'th column (1 for all)
+  * @param ySubsampling use every ySubsampling'th row (1 for all)
+  */
+ public SimplePicture(String fileName, Rectangle region, 
+                      int xSubsampling, int ySubsampling)
+ {
+   load(fileName,region,xSubsampling,ySubsampling);
+ }
+ 
  /**
   * A constructor that takes the width and height desired for a picture and
   * creates a buffered image of that size.  This constructor doesn't 
@@ -82,6 +201,7 @@ public class SimplePicture implements DigitalPicture
  public  SimplePicture(int width, int height)
  {
    bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+   bindRaster();
    title = "None";
    fileName = "None";
    extension = "jpg";
@@ -103,7 +223,17 @@ public class SimplePicture implements DigitalPicture
  }
  
  /**
-  * A Constructor that takes a picture to copy information from
+  * A Constructor that takes a picture to copy information from.  The
+  * copy shares the buffered image of the picture until one of them is
+  * about to change its pixels, and only then are the pixels copied (a
+  * whole raster at a time, see ensureWritable).  So a copy that is only
+  * read costs almost nothing.  Packed RGB and ARGB pictures keep their
+  * image type, and others are made packed when they are copied (see
+  * copyImage).  Off-heap pictures are copied right away, so that each
+  * one can close its own memory, and so are views, pictures with views,
+  * and pictures whose buffered image, graphics, or raster data has been
+  * handed out, since their pixels can change without this class 
+  * knowing.
   * @param copyPicture the picture to copy from
   */
  public SimplePicture(SimplePicture copyPicture)
@@ -115,11 +245,24 @@ public class SimplePicture implements DigitalPicture
    }
    if (copyPicture.title != null)
       this.title = new String(copyPicture.title);
-   if (copyPicture.bufferedImage != null)
+   this.carrier = copyPicture.carrier;
+   synchronized (copyPicture)
    {
-     this.bufferedImage = new BufferedImage(copyPicture.getWidth(),
-                                            copyPicture.getHeight(), BufferedImage.TYPE_INT_RGB);
-     this.copyPicture(copyPicture);
+     if (copyPicture.bufferedImage == null)
+       return;
+     if (copyPicture.isOffHeap() || copyPicture.isViewed() || copyPicture.exposed)
+     {
+       this.bufferedImage = copyPicture.copyImage();
+       bindRaster();
+       return;
+     }
+     
+     // both pictures copy the image before their next change
+     this.bufferedImage = copyPicture.bufferedImage;
+     bindRaster();
+     this.contentHash = copyPicture.contentHash;
+     this.shared = true;
+     copyPicture.shared = true;
    }
  }
  
@@ -130,6 +273,7 @@ public class SimplePicture implements DigitalPicture
  public SimplePicture(BufferedImage image)
  {
    this.bufferedImage = image;
+   bindRaster();
    title = "None";
    fileName = "None";
    extension = "jpg";
@@ -146,32 +290,115 @@ public class SimplePicture implements DigitalPicture
  
  /**
   * Method that will copy all of the passed source picture into
-  * the current picture object 
+  * the current picture object.  The colors are copied but each
+  * pixel in this picture keeps its own alpha.
   * @param sourcePicture  the picture object to copy
   */
  public void copyPicture(SimplePicture sourcePicture)
  {
-   Pixel sourcePixel = null;
-   Pixel targetPixel = null;
+   int width = Math.min(sourcePicture.getWidth(), this.getWidth());
+   int height = Math.min(sourcePicture.getHeight(), this.getHeight());
+   if (width <= 0)
+     return;
+   
+   boolean keepAlpha = alpha;
+   int[] sourcePixels = new int[width];
+   int[] targetPixels = new int[width];
+   
+   // copy a row at a time
+   for (int row = 0; row < height; row++)
+   {
+     sourcePicture.getBasicPixels(0,row,width,1,sourcePixels);
+     if (keepAlpha)
+     {
+       this.getBasicPixels(0,row,width,1,targetPixels);
+       for (int col = 0; col < width; col++)
+         sourcePixels[col] = (targetPixels[col] & 0xff000000) | 
+                             (sourcePixels[col] & 0xffffff);
+     }
+     this.setBasicPixels(0,row,width,1,sourcePixels);
+   }
+ }
+ 
+ /**
+  * Method to make a copy of the buffered image for this picture.
+  * Packed RGB and ARGB images are copied with System.arraycopy and
+  * keep their color model and raster layout.  Any other image (like
+  * an indexed gif or a gray picture) is copied into a TYPE_INT_RGB or
+  * TYPE_INT_ARGB image, like the first versions of this class did, so
+  * that later changes (like hidden low bits) aren't rounded to the
+  * nearest color the old image could hold.  A picture kept in an int
+  * buffer (like a raw file) is copied into a normal int array, unless
+  * it is off-heap, in which case the copy is off-heap too.
+  * @return a new buffered image with the same pixels
+  */
+ private BufferedImage copyImage()
+ {
+   ColorModel colorModel = bufferedImage.getColorModel();
+   WritableRaster raster = bufferedImage.getRaster();
+   int width = bufferedImage.getWidth();
+   int height = bufferedImage.getHeight();
    
-   // loop through the columns
-   for (int sourceX = 0, targetX = 0; 
-        sourceX < sourcePicture.getWidth() &&
-        targetX < this.getWidth();
-        sourceX++, targetX++)
+   // an off-heap picture is copied into new off-heap memory
+   IntBufferDataBuffer offHeap = getOffHeapBuffer();
+   if (offHeap != null)
    {
-     // loop through the rows
-     for (int sourceY = 0, targetY = 0; 
-          sourceY < sourcePicture.getHeight() && 
-          targetY < this.getHeight();
-          sourceY++, targetY++)
+     IntBufferDataBuffer copyBuffer = new IntBufferDataBuffer(width * height);
+     IntBuffer from = offHeap.getBuffer();
+     IntBuffer to = copyBuffer.getBuffer();
+     int offset = rasterOffset;
+     int stride = rasterStride;
+     offHeap.acquire();
+     try
      {
-       sourcePixel = sourcePicture.getPixel(sourceX,sourceY);
-       targetPixel = this.getPixel(targetX,targetY);
-       targetPixel.setColor(sourcePixel.getColor());
+       BandExecutor.getDefault().forEachBand(width,height,(startRow, endRow) -> {
+         for (int row = startRow; row < endRow; row++)
+           to.put(row * width,from,offset + row * stride,width);
+       });
      }
+     finally
+     {
+       offHeap.release();
+     }
+     return RawImageFile.createImage(copyBuffer,width,height,alpha);
+   }
+   
+   // other kinds of images are made packed RGB or ARGB
+   if (rasterData == null && rasterBuffer == null)
+   {
+     BufferedImage source = bufferedImage;
+     BufferedImage copy = new BufferedImage(width,height,colorModel.hasAlpha()
+                                            ? BufferedImage.TYPE_INT_ARGB
+                                            : BufferedImage.TYPE_INT_RGB);
+     int[] to = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+     BandExecutor.getDefault().forEachBand(width,height,(startRow, endRow) ->
+       source.getRGB(0,startRow,width,endRow - startRow,to,startRow * width,width));
+     return copy;
    }
    
+   // this starts at 0,0 even when the source is a sub image
+   WritableRaster copy = raster.createCompatibleWritableRaster(width,height);
+   int[] to = ((DataBufferInt) copy.getDataBuffer()).getData();
+   int[] data = rasterData;
+   IntBufferDataBuffer buffer = rasterBuffer;
+   int offset = rasterOffset;
+   int stride = rasterStride;
+   
+   // copy in bands of rows (on several threads for big pictures)
+   BandExecutor.getDefault().forEachBand(width,height,(startRow, endRow) -> {
+     if (data == null)
+       for (int row = startRow; row < endRow; row++)
+         buffer.get(offset + row * stride,to,row * width,width);
+     else if (offset == 0 && stride == width)
+       System.arraycopy(data,startRow * width,to,startRow * width,
+                        (endRow - startRow) * width);
+     else
+       for (int row = startRow; row < endRow; row++)
+         System.arraycopy(data,offset + row * stride,to,row * width,width);
+   });
+   
+   return new BufferedImage(colorModel,copy,
+                            bufferedImage.isAlphaPremultiplied(),null);
  }
  
  /**
@@ -192,21 +419,74 @@ public class SimplePicture implements DigitalPicture
  }
  
  /**
-  * Method to get the buffered image
+  * Method to get the buffered image.  If the image is shared it is
+  * copied first, since the caller may change it.  From then on copies
+  * of this picture are made right away and its content hashes aren't
+  * kept, since the image can be changed at any time.
   * @return the buffered image 
   */
  public BufferedImage getBufferedImage() 
  {
-    return bufferedImage;
+    return exposeImage();
+ }
+ 
+ /**
+  * Method to copy the buffered image if it is shared and note that it
+  * is being handed out (see getBufferedImage)
+  * @return the buffered image
+  */
+ private synchronized BufferedImage exposeImage()
+ {
+   ensureWritable();
+   exposed = true;
+   contentHash = null;
+   
+   // the pixels of a view are its parent's pixels too
+   if (parent != null)
+     parent.exposeImage();
+   return bufferedImage;
  }
  
+ /**
+  * Method to get a graphics object to draw on this picture inside one
+  * of its own methods.  Unlike createGraphics it doesn't hand out the
+  * image, so the caller must call markChanged() after drawing.
+  * @return a graphics object to draw with
+  */
+ private Graphics2D createOwnGraphics()
+ {
+   ensureWritable();
+   return bufferedImage.createGraphics();
+ }
+ 
+ /**
+  * Method to tell if this picture stores alpha (transparency).  If it
+  * doesn't then the alpha of every pixel is 255.
+  * @return true if the pixels have their own alpha values
+  */
+ public boolean hasAlpha() { return alpha; }
+ 
+ /**
+  * Method to tell if a payload is hidden in this picture.  Carriers
+  * can't be written in a lossy format like jpg, since that would
+  * change the low bits and lose the payload.
+  * @return true if this picture is a carrier
+  */
+ public boolean isCarrier() { return carrier; }
+ 
+ /**
+  * Method to mark this picture as a carrier (or not)
+  * @param carrier true if a payload is hidden in this picture
+  */
+ public void setCarrier(boolean carrier) { this.carrier = carrier; }
+ 
  /**
   * Method to get a graphics object for this picture to use to draw on
   * @return a graphics object to use for drawing
   */
  public Graphics getGraphics()
  {
-   return bufferedImage.getGraphics();
+   return exposeImage().getGraphics();
  }
  
  /**
@@ -215,7 +495,7 @@ public class SimplePicture implements DigitalPicture
   */
  public Graphics2D createGraphics()
  {
-   return bufferedImage.createGraphics();
+   return exposeImage().createGraphics();
  }
  
  /**
@@ -281,12 +561,13 @@ public class SimplePicture implements DigitalPicture
  }
  
  /**
-  * Method to get an image from the picture
+  * Method to get an image from the picture.  This is the buffered 
+  * image, so drawing on it changes the picture (see getBufferedImage).
   * @return  the buffered image since it is an image
   */
  public Image getImage()
  {
-   return bufferedImage;
+   return exposeImage();
  }
  
  /**
@@ -297,7 +578,15 @@ public class SimplePicture implements DigitalPicture
   */
  public int getBasicPixel(int x, int y)
  {
-    return bufferedImage.getRGB(x,y);
+    if (rasterData == null)
+    {
+      if (rasterBuffer == null)
+        return bufferedImage.getRGB(x,y);
+      checkBounds(x,y,1,1);
+      return rasterBuffer.get(rasterOffset + y * rasterStride + x) | alphaMask;
+    }
+    checkBounds(x,y,1,1);
+    return rasterData[rasterOffset + y * rasterStride + x] | alphaMask;
  }
     
  /** 
@@ -308,7 +597,427 @@ public class SimplePicture implements DigitalPicture
   */     
  public void setBasicPixel(int x, int y, int rgb)
  {
-   bufferedImage.setRGB(x,y,rgb);
+   if (shared)
+     ensureWritable();
+   contentHash = null;
+   if (rasterData == null)
+   {
+     if (rasterBuffer == null)
+       bufferedImage.setRGB(x,y,rgb);
+     else
+     {
+       checkBounds(x,y,1,1);
+       rasterBuffer.put(rasterOffset + y * rasterStride + x,rgb & ~alphaMask);
+     }
+     return;
+   }
+   checkBounds(x,y,1,1);
+   rasterData[rasterOffset + y * rasterStride + x] = rgb & ~alphaMask;
+ }
+ 
+ /**
+  * Method to get a rectangle of pixel values as packed ints.  The values
+  * are the same ones getBasicPixel would return, stored in row-major
+  * order starting at index 0 of the buffer.
+  * @param x the x coordinate of the left side of the rectangle
+  * @param y the y coordinate of the top of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param buffer the array to fill (may be null, or too small, in which
+  * case a new array is created)
+  * @return the array holding the pixel values
+  */
+ public int[] getBasicPixels(int x, int y, int width, int height, int[] buffer)
+ {
+   if (buffer == null || buffer.length < width * height)
+     buffer = new int[width * height];
+   
+   if (rasterData == null && rasterBuffer == null)
+     return bufferedImage.getRGB(x,y,width,height,buffer,0,width);
+   
+   checkBounds(x,y,width,height);
+   for (int row = 0; row < height; row++)
+   {
+     int from = rasterOffset + (y + row) * rasterStride + x;
+     int to = row * width;
+     if (rasterData != null)
+       System.arraycopy(rasterData,from,buffer,to,width);
+     else
+       rasterBuffer.get(from,buffer,to,width);
+     
+     // images without alpha don't store it, so add it back in
+     if (alphaMask != 0)
+       for (int i = to; i < to + width; i++)
+         buffer[i] |= alphaMask;
+   }
+   return buffer;
+ }
+ 
+ /**
+  * Method to set a rectangle of pixel values from packed ints in
+  * row-major order starting at index 0 of the passed array
+  * @param x the x coordinate of the left side of the rectangle
+  * @param y the y coordinate of the top of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  * @param pixels the new pixel values (alpha, red, green, blue)
+  */
+ public void setBasicPixels(int x, int y, int width, int height, int[] pixels)
+ {
+   if (shared)
+     ensureWritable();
+   contentHash = null;
+   if (rasterData == null && rasterBuffer == null)
+   {
+     bufferedImage.setRGB(x,y,width,height,pixels,0,width);
+     return;
+   }
+   
+   checkBounds(x,y,width,height);
+   int keep = ~alphaMask;
+   for (int row = 0; row < height; row++)
+   {
+     int from = row * width;
+     int to = rasterOffset + (y + row) * rasterStride + x;
+     if (rasterBuffer != null)
+     {
+       // the stored alpha bits are ignored for images without alpha
+       rasterBuffer.put(to,pixels,from,width);
+     }
+     else if (alphaMask == 0)
+       System.arraycopy(pixels,from,rasterData,to,width);
+     else
+       for (int i = 0; i < width; i++)
+         rasterData[to + i] = pixels[from + i] & keep;
+   }
+ }
+ 
+ /**
+  * Method to get one row of pixel values as packed ints
+  * @param y the row to get
+  * @param buffer the array to fill (may be null)
+  * @return the array holding the row's pixel values
+  */
+ public int[] getBasicRow(int y, int[] buffer)
+ {
+   return getBasicPixels(0,y,getWidth(),1,buffer);
+ }
+ 
+ /**
+  * Method to set one row of pixel values from packed ints
+  * @param y the row to set
+  * @param pixels the new pixel values for the row
+  */
+ public void setBasicRow(int y, int[] pixels)
+ {
+   setBasicPixels(0,y,getWidth(),1,pixels);
+ }
+ 
+ /**
+  * Method to get the int array that holds the pixels of this picture.
+  * This is only available when the buffered image stores one packed 
+  * int per pixel (TYPE_INT_RGB or TYPE_INT_ARGB).  Pixel (x,y) is at
+  * index getRasterOffset() + y * getRasterStride() + x.  For TYPE_INT_RGB
+  * the top (alpha) byte of each value is ignored.
+  * Like getBufferedImage, this hands out the pixels, so copies of this
+  * picture are made right away from then on.
+  * @return the raster data, or null if the image isn't int packed
+  */
+ public int[] getRasterData()
+ {
+   exposeImage();
+   return rasterData;
+ }
+ 
+ /**
+  * Method to get the index of pixel (0,0) in the raster data
+  * @return the index of the first pixel in getRasterData()
+  */
+ public int getRasterOffset() { return rasterOffset; }
+ 
+ /**
+  * Method to get the int buffer that holds the pixels of this picture
+  * when they are kept in an IntBufferDataBuffer (like a picture read
+  * from a raw file).  Pixel (x,y) is at index getRasterOffset() + 
+  * y * getRasterStride() + x, the same as for getRasterData().
+  * Like getRasterData, this hands out the pixels.  Off-heap pixels
+  * aren't handed out, since close() frees them.
+  * @return the raster buffer, or null if the pixels aren't in one or
+  * are off-heap
+  */
+ public IntBuffer getRasterBuffer()
+ {
+   exposeImage();
+   IntBufferDataBuffer buffer = rasterBuffer;
+   if (buffer == null || buffer.isOffHeap())
+     return null;
+   return buffer.getBuffer();
+ }
+ 
+ /**
+  * Method to get the distance between rows in the raster data
+  * @return the number of ints from one row to the next
+  */
+ public int getRasterStride() { return rasterStride; }
+ 
+ /**
+  * Method to get the content hashes of this picture (see ContentHash).
+  * They are worked out the first time and then kept until the pixels
+  * change.  They aren't kept for views or pictures with views in use,
+  * since their pixels can be changed through another picture, or for
+  * pictures whose buffered image, graphics, or raster data has been 
+  * handed out.
+  * @return the content hashes
+  */
+ public ContentHash getContentHash()
+ {
+   if (exposed || isViewed())
+     return new ContentHash(this);
+   ContentHash hash = contentHash;
+   if (hash == null)
+   {
+     hash = new ContentHash(this);
+     contentHash = hash;
+   }
+   return hash;
+ }
+ 
+ /**
+  * Method to note that the pixels have been changed other than through
+  * the methods of this class (for example by drawing on the buffered
+  * image or writing to the raster data)
+  */
+ public void markChanged()
+ {
+   contentHash = null;
+ }
+ 
+ /**
+  * Method to tell if the buffered image is shared with something else
+  * (like the ImageCache or a copy of this picture), so it will be 
+  * copied before it is changed
+  * @return true if the buffered image is shared
+  */
+ public boolean isShared() { return shared; }
+ 
+ /**
+  * Method to copy the buffered image if it is shared, so that this
+  * picture can change its pixels without changing anything else.  
+  * Every method that changes the pixels calls this first.
+  */
+ protected synchronized void ensureWritable()
+ {
+   if (!shared)
+     return;
+   ContentHash hash = contentHash;
+   bufferedImage = copyImage();
+   bindRaster();
+   contentHash = hash;
+   shared = false;
+ }
+ 
+ /**
+  * Method to move the pixels of this picture out of the Java heap into
+  * off-heap memory (see IntBufferDataBuffer).  The garbage collector
+  * doesn't have to scan or copy those pixels, which keeps its pauses 
+  * short when there are big pictures around.  The buffered image is 
+  * replaced by one that keeps its pixels in the off-heap memory, so it
+  * can still be shown and written with ImageIO, and all of the methods
+  * of this class work as before.  Copies of the picture (like the ones
+  * Steganography makes) are off-heap too.  Call close() to give the
+  * memory back right away when the picture isn't needed any more;
+  * otherwise it is given back when the garbage collector finds that
+  * nothing refers to it.  This does nothing if the picture is already
+  * off-heap.
+  */
+ public synchronized void moveOffHeap()
+ {
+   if (getOffHeapBuffer() != null)
+     return;
+   int width = getWidth();
+   int height = getHeight();
+   IntBufferDataBuffer dataBuffer = new IntBufferDataBuffer(width * height);
+   IntBuffer to = dataBuffer.getBuffer();
+   
+   // the alpha added back in for images without alpha is ignored
+   BandExecutor.getDefault().forEachBand(this,(startRow, endRow) -> {
+     int[] pixels = new int[width];
+     for (int row = startRow; row < endRow; row++)
+       to.put(row * width,getBasicRow(row,pixels),0,width);
+   });
+   
+   ContentHash hash = contentHash;
+   bufferedImage = RawImageFile.createImage(dataBuffer,width,height,hasAlpha());
+   bindRaster();
+   contentHash = hash;
+   shared = false;
+ }
+ 
+ /**
+  * Method to tell if the pixels of this picture are in off-heap memory
+  * (see moveOffHeap)
+  * @return true if the picture is off-heap
+  */
+ public boolean isOffHeap() { return getOffHeapBuffer() != null; }
+ 
+ /**
+  * Method to give back the off-heap memory of this picture right away
+  * (see IntBufferDataBuffer.close).  A read or write of the pixels that
+  * is going on (like a band on another thread) finishes first.  After
+  * this, reading or writing the pixels of this picture, its views, or
+  * its buffered image throws an IllegalStateException, and so does 
+  * copying it.  Its size can still be read.  This does nothing if the
+  * picture isn't off-heap or is a view.
+  */
+ public synchronized void close()
+ {
+   IntBufferDataBuffer dataBuffer = getOffHeapBuffer();
+   if (parent != null || dataBuffer == null)
+     return;
+   dataBuffer.close();
+ }
+ 
+ /**
+  * Method to get the data buffer holding the off-heap memory of this
+  * picture
+  * @return the data buffer, or null if the picture isn't off-heap
+  */
+ private IntBufferDataBuffer getOffHeapBuffer()
+ {
+   IntBufferDataBuffer buffer = rasterBuffer;
+   if (buffer == null || !buffer.isOffHeap())
+     return null;
+   return buffer;
+ }
+ 
+ /**
+  * Method to get a view of part of this picture.  The view is a picture
+  * whose pixels are the pixels in the rectangle of this picture (like
+  * BufferedImage.getSubimage), so nothing is copied and changing either
+  * one changes the other.  Every method of Picture works on a view, so
+  * a region can be changed in place, and views that don't overlap can
+  * be changed on different threads at the same time.  A copy of a view
+  * is a real copy of its pixels, and so is a copy of this picture
+  * while it has views.  Once the views are dropped (and the garbage 
+  * collector has found them) copies share pixels again.  If this 
+  * picture later loads a new image or moves off-heap, its views keep
+  * the old pixels.
+  * @param x the x coordinate of the left side of the view
+  * @param y the y coordinate of the top of the view
+  * @param width the width of the view
+  * @param height the height of the view
+  * @return the view
+  */
+ public synchronized Picture view(int x, int y, int width, int height)
+ {
+   checkBounds(x,y,width,height);
+   
+   // the view writes to the pixels, so they can't be shared any more
+   ensureWritable();
+   Picture picture = new Picture(bufferedImage.getSubimage(x,y,width,height));
+   SimplePicture part = picture;
+   part.title = title;
+   part.extension = extension;
+   part.carrier = carrier;
+   part.parent = this;
+   if (views == null)
+     views = new ArrayList<>();
+   views.add(new WeakReference<>(part));
+   return picture;
+ }
+ 
+ /**
+  * Method to tell if this picture is a view of part of another picture
+  * (see view)
+  * @return true if this picture is a view
+  */
+ public boolean isView() { return parent != null; }
+ 
+ /**
+  * Method to tell if the pixels of this picture can change through
+  * another picture, because it is a view or has views that are still
+  * in use.  Views that have been dropped are forgotten here.
+  * @return true if this picture is a view or has views
+  */
+ private synchronized boolean isViewed()
+ {
+   if (parent != null)
+     return true;
+   if (views != null)
+   {
+     views.removeIf(ref -> ref.get() == null);
+     if (views.isEmpty())
+       views = null;
+   }
+   return views != null;
+ }
+ 
+ /**
+  * Method to check that a rectangle is inside of this picture
+  * @param x the x coordinate of the left side of the rectangle
+  * @param y the y coordinate of the top of the rectangle
+  * @param width the width of the rectangle
+  * @param height the height of the rectangle
+  */
+ private void checkBounds(int x, int y, int width, int height)
+ {
+   if (x < 0 || y < 0 || width < 0 || height < 0 ||
+       x + width > bufferedImage.getWidth() || 
+       y + height > bufferedImage.getHeight())
+     throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+ }
+ 
+ /**
+  * Method to find the int array or buffer (if any) behind the buffered
+  * image.  This must be called whenever the buffered image is replaced.
+  */
+ private void bindRaster()
+ {
+   rasterData = null;
+   rasterBuffer = null;
+   contentHash = null;
+   exposed = false;
+   
+   // views of the old image don't change the new one
+   views = null;
+   if (bufferedImage == null)
+     return;
+   ColorModel colorModel = bufferedImage.getColorModel();
+   alpha = colorModel.hasAlpha();
+   
+   // only non-premultiplied packed RGB or ARGB pixels can be used as is
+   WritableRaster raster = bufferedImage.getRaster();
+   DataBuffer dataBuffer = raster.getDataBuffer();
+   if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel) ||
+       !(colorModel instanceof DirectColorModel) ||
+       !colorModel.getColorSpace().isCS_sRGB() ||
+       colorModel.isAlphaPremultiplied() ||
+       dataBuffer.getDataType() != DataBuffer.TYPE_INT ||
+       dataBuffer.getNumBanks() != 1)
+     return;
+   SinglePixelPackedSampleModel sampleModel = 
+     (SinglePixelPackedSampleModel) raster.getSampleModel();
+   int[] masks = sampleModel.getBitMasks();
+   if (masks.length < 3 || masks[0] != 0xff0000 || masks[1] != 0xff00 ||
+       masks[2] != 0xff || (masks.length == 4) != alpha ||
+       (alpha && masks[3] != 0xff000000))
+     return;
+   
+   rasterStride = sampleModel.getScanlineStride();
+   rasterOffset = dataBuffer.getOffset() + 
+     sampleModel.getOffset(-raster.getSampleModelTranslateX(),
+                           -raster.getSampleModelTranslateY());
+   alphaMask = alpha ? 0 : 0xff000000;
+   if (dataBuffer instanceof DataBufferInt)
+     rasterData = ((DataBufferInt) dataBuffer).getData();
+   else if (dataBuffer instanceof IntBufferDataBuffer)
+   {
+     rasterBuffer = (IntBufferDataBuffer) dataBuffer;
+     
+     // a read-only buffer (like a read-only raw file) is copied first
+     if (rasterBuffer.getBuffer().isReadOnly())
+       shared = true;
+   }
  }
   
  /**
@@ -361,6 +1070,90 @@ public class SimplePicture implements DigitalPicture
    return pixelArray;
  }
  
+ /**
+  * Method to change every pixel in this picture with the passed operator.
+  * The operator is given each packed pixel value (alpha, red, green,
+  * blue) and returns the new value.  No Pixel objects are created.
+  * Large pictures are done in bands of rows on several threads (see
+  * BandExecutor), so the operator must only depend on the value it 
+  * is passed.
+  * @param operator the operator that computes the new pixel values
+  */
+ public void forEachPixel(IntUnaryOperator operator)
+ {
+   ensureWritable();
+   markChanged();
+   int width = getWidth();
+   int[] data = rasterData;
+   int offset = rasterOffset;
+   int stride = rasterStride;
+   int addAlpha = alphaMask;
+   
+   BandExecutor.getDefault().forEachBand(this, (startRow, endRow) -> {
+     
+     // work right on the raster data if there is some
+     if (data != null)
+     {
+       int keep = ~addAlpha;
+       for (int row = startRow; row < endRow; row++)
+       {
+         int start = offset + row * stride;
+         for (int i = start; i < start + width; i++)
+           data[i] = operator.applyAsInt(data[i] | addAlpha) & keep;
+       }
+       return;
+     }
+     
+     // else go a row at a time
+     int[] pixels = new int[width];
+     for (int row = startRow; row < endRow; row++)
+     {
+       getBasicRow(row,pixels);
+       for (int col = 0; col < width; col++)
+         pixels[col] = operator.applyAsInt(pixels[col]);
+       setBasicRow(row,pixels);
+     }
+   });
+ }
+ 
+ /**
+  * Method to change every row of this picture with the passed operator.
+  * When the picture is int packed the operator works right on the 
+  * raster data, so the alpha byte of pictures without alpha (see 
+  * hasAlpha) may be 0 and must be left alone.  Otherwise each row is
+  * copied into a buffer and back.  That includes pictures kept in an
+  * int buffer (like off-heap ones), since bulk copies and a loop over
+  * an array are faster than reading and writing the buffer one int at
+  * a time.  Large pictures are done in bands of rows on several threads.
+  * @param operator the operator to apply to each row
+  */
+ public void forEachRow(RowOperator operator)
+ {
+   ensureWritable();
+   markChanged();
+   int width = getWidth();
+   int[] data = rasterData;
+   int offset = rasterOffset;
+   int stride = rasterStride;
+   
+   BandExecutor.getDefault().forEachBand(this, (startRow, endRow) -> {
+     if (data != null)
+     {
+       for (int row = startRow; row < endRow; row++)
+         operator.apply(data,offset + row * stride,width,row);
+       return;
+     }
+     
+     int[] pixels = new int[width];
+     for (int row = startRow; row < endRow; row++)
+     {
+       getBasicRow(row,pixels);
+       operator.apply(pixels,0,width,row);
+       setBasicRow(row,pixels);
+     }
+   });
+ }
+ 
  /**
   * Method to load the buffered image with the passed image
   * @param image  the image to use
@@ -368,10 +1161,12 @@ public class SimplePicture implements DigitalPicture
  public void load(Image image)
  {
    // get a graphics context to use to draw on the buffered image
-   Graphics2D graphics2d = bufferedImage.createGraphics();
+   Graphics2D graphics2d = createOwnGraphics();
    
    // draw the image on the buffered image starting at 0,0
    graphics2d.drawImage(image,0,0,null);
+   graphics2d.dispose();
+   markChanged();
    
    // show the new image
    show();
@@ -444,12 +1239,151 @@ public class SimplePicture implements DigitalPicture
   * @throws IOException if the picture isn't found
   */
  public void loadOrFail(String fileName) throws IOException
+ {
+   File file = findFile(fileName);
+   
+   // raw files are mapped into memory instead of being decoded, and
+   // other files are shared with the image cache until they change
+   if (RawImageFile.isRawFile(file.getName()))
+   {
+     bufferedImage = RawImageFile.read(file);
+     shared = false;
+   }
+   else
+   {
+     bufferedImage = ImageCache.getDefault().read(file);
+     shared = true;
+   }
+   bindRaster();
+ }
+ 
+ /**
+  * Method to load part of a picture from the passed file name.  Only
+  * the pixels in the region are decoded, and with subsampling only
+  * every xSubsampling'th column of every ySubsampling'th row (starting
+  * at the top left of the region), so a preview or the first few rows
+  * of a big file can be loaded quickly.  The picture is as big as the
+  * pixels that were loaded.
+  * @param fileName the file name to use to load the picture from
+  * @param region the part of the file to load (null for all of it)
+  * @param xSubsampling use every xSubsampling'th column (1 for all)
+  * @param ySubsampling use every ySubsampling'th row (1 for all)
+  * @throws IOException if the picture isn't found or the region is
+  * outside of it
+  */
+ public void loadOrFail(String fileName, Rectangle region, 
+                        int xSubsampling, int ySubsampling) throws IOException
+ {
+   if (xSubsampling < 1 || ySubsampling < 1)
+     throw new IllegalArgumentException("subsampling must be 1 or more, not " +
+                                        xSubsampling + "," + ySubsampling);
+   if (region == null && xSubsampling == 1 && ySubsampling == 1)
+   {
+     loadOrFail(fileName);
+     return;
+   }
+   File file = findFile(fileName);
+   
+   if (RawImageFile.isRawFile(file.getName()))
+   {
+     // a mapped file only reads the pages it uses anyway
+     BufferedImage image = RawImageFile.read(file);
+     Rectangle bounds = getRegion(region,image.getWidth(),image.getHeight());
+     bufferedImage = subsample(image.getSubimage(bounds.x,bounds.y,
+                                                 bounds.width,bounds.height),
+                               xSubsampling,ySubsampling);
+   }
+   else
+   {
+     try (ImageInputStream input = ImageIO.createImageInputStream(file))
+     {
+       Iterator<ImageReader> readers = 
+         (input == null) ? null : ImageIO.getImageReaders(input);
+       if (readers == null || !readers.hasNext())
+         throw new IOException(file + " is not in a format that can be read");
+       ImageReader reader = readers.next();
+       try
+       {
+         reader.setInput(input,true,true);
+         ImageReadParam param = reader.getDefaultReadParam();
+         param.setSourceRegion(getRegion(region,reader.getWidth(0),
+                                         reader.getHeight(0)));
+         param.setSourceSubsampling(xSubsampling,ySubsampling,0,0);
+         bufferedImage = reader.read(0,param);
+       }
+       finally
+       {
+         reader.dispose();
+       }
+     }
+   }
+   shared = false;
+   bindRaster();
+ }
+ 
+ /**
+  * Method to check a region against the size of an image
+  * @param region the region (null for the whole image)
+  * @param width the width of the image
+  * @param height the height of the image
+  * @return the part of the region that is inside of the image
+  * @throws IOException if none of the region is inside of the image
+  */
+ private static Rectangle getRegion(Rectangle region, int width, int height)
+   throws IOException
+ {
+   Rectangle bounds = new Rectangle(0,0,width,height);
+   if (region == null)
+     return bounds;
+   Rectangle inside = region.intersection(bounds);
+   if (inside.isEmpty())
+     throw new IOException("region " + region + " is outside of the " +
+                           width + "x" + height + " picture");
+   return inside;
+ }
+ 
+ /**
+  * Method to make a copy of every xSubsampling'th column of every 
+  * ySubsampling'th row of an image
+  * @param image the image to copy from
+  * @param xSubsampling the distance between columns to copy
+  * @param ySubsampling the distance between rows to copy
+  * @return the new image (the same type for int packed images)
+  */
+ private static BufferedImage subsample(BufferedImage image, 
+                                        int xSubsampling, int ySubsampling)
+ {
+   int width = (image.getWidth() + xSubsampling - 1) / xSubsampling;
+   int height = (image.getHeight() + ySubsampling - 1) / ySubsampling;
+   int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+                                               : BufferedImage.TYPE_INT_RGB;
+   BufferedImage result = new BufferedImage(width,height,type);
+   int[] row = new int[image.getWidth()];
+   int[] pixels = new int[width];
+   for (int y = 0; y < height; y++)
+   {
+     image.getRGB(0,y * ySubsampling,row.length,1,row,0,row.length);
+     for (int x = 0; x < width; x++)
+       pixels[x] = row[x * xSubsampling];
+     result.setRGB(0,y,width,1,pixels,0,width);
+   }
+   return result;
+ }
+ 
+ /**
+  * Method to set the file name, extension, and title for a file that
+  * is being loaded and find the file (in the media path if needed)
+  * @param fileName the file name to load the picture from
+  * @return the file to read
+  * @throws IOException if the file can't be read
+  */
+ private File findFile(String fileName) throws IOException
  {
     // set the current picture's file name
    this.fileName = fileName;
    
    // set the extension
-   int posDot = fileName.indexOf('.');
+   int posDot = findExtensionDot(fileName);
    if (posDot >= 0)
      this.extension = fileName.substring(posDot + 1);
    
@@ -469,8 +1403,7 @@ public class SimplePicture implements DigitalPicture
                              " could not be opened. Check that you specified the path");
      }
    }
-   
-   bufferedImage = ImageIO.read(file);
+   return file;
  }
 
 
@@ -490,12 +1423,41 @@ public class SimplePicture implements DigitalPicture
          System.out.println("There was an error trying to open " + fileName);
          bufferedImage = new BufferedImage(600,200,
                                            BufferedImage.TYPE_INT_RGB);
+         shared = false;
+         bindRaster();
          addMessage("Couldn't load " + fileName,5,100);
          return false;
      }
          
  }
 
+ /**
+  * Method to load part of a picture from a file name without throwing
+  * errors (see loadOrFail(String,Rectangle,int,int))
+  * @param fileName the file name to use to load the picture from
+  * @param region the part of the file to load (null for all of it)
+  * @param xSubsampling use every xSubsampling'th column (1 for all)
+  * @param ySubsampling use every ySubsampling'th row (1 for all)
+  * @return true if success else false
+  */
+ public boolean load(String fileName, Rectangle region, 
+                     int xSubsampling, int ySubsampling)
+ {
+     try {
+         this.loadOrFail(fileName,region,xSubsampling,ySubsampling);
+         return true;
+
+     } catch (Exception ex) {
+         System.out.println("There was an error trying to open " + fileName);
+         bufferedImage = new BufferedImage(600,200,
+                                           BufferedImage.TYPE_INT_RGB);
+         shared = false;
+         bindRaster();
+         addMessage("Couldn't load " + fileName,5,100);
+         return false;
+     }
+ }
+
  /**
   * Method to load the picture from the passed file name
   * this just calls load(fileName) and is for name compatibility
@@ -516,7 +1478,7 @@ public class SimplePicture implements DigitalPicture
  public void addMessage(String message, int xPos, int yPos)
  {
    // get a graphics context to use to draw on the buffered image
-   Graphics2D graphics2d = bufferedImage.createGraphics();
+   Graphics2D graphics2d = createOwnGraphics();
    
    // set the color to white
    graphics2d.setPaint(Color.white);
@@ -526,6 +1488,8 @@ public class SimplePicture implements DigitalPicture
    
    // draw the message
    graphics2d.drawString(message,xPos,yPos);
+   graphics2d.dispose();
+   markChanged();
    
  }
  
@@ -558,11 +1522,12 @@ public class SimplePicture implements DigitalPicture
                                  (int) (getHeight() * yFactor));
     
     // get the graphics 2d object to draw on the result
-    Graphics graphics = result.getGraphics();
-    Graphics2D g2 = (Graphics2D) graphics;
+    Graphics2D g2 = ((SimplePicture) result).createOwnGraphics();
     
     // draw the current image onto the result image scaled
-    g2.drawImage(this.getImage(),scaleTransform,null);
+    g2.drawImage(this.bufferedImage,scaleTransform,null);
+    g2.dispose();
+    result.markChanged();
     
     return result;
   }
@@ -624,6 +1589,10 @@ public class SimplePicture implements DigitalPicture
  {
    String extension = this.extension; // the default is current
    
+   // a carrier must be saved without losing its low bits
+   if (carrier && !PngWriter.isLossless(extension))
+     extension = "png";
+   
    // create the file object
    File file = new File(fileName);
    File fileLoc = file.getParentFile(); // directory name
@@ -643,14 +1612,57 @@ public class SimplePicture implements DigitalPicture
    }
    
    // get the extension
-   int posDot = fileName.indexOf('.');
+   int posDot = findExtensionDot(fileName);
    if (posDot >= 0)
        extension = fileName.substring(posDot + 1);
    
+   if (carrier && !PngWriter.isLossless(extension))
+     throw new IOException(fileName + " is in a lossy format, which would" +
+                           " lose the payload hidden in this picture." +
+                           " Use writeLossless or a png file name.");
+   
    // write the contents of the buffered image to the file
-   ImageIO.write(bufferedImage, extension, file);
+   if (extension.equalsIgnoreCase("png"))
+     PngWriter.getDefault().write(bufferedImage, file);
+   else if (extension.equalsIgnoreCase(RawImageFile.EXTENSION))
+     RawImageFile.write(this, file);
+   else
+     ImageIO.write(bufferedImage, extension, file);
      
  }
+ 
+ /**
+  * Method to write the picture in a lossless format.  If the file name
+  * is for a lossy format (like jpg) or has no extension then a png file
+  * is written instead, with the extension changed to png.
+  * @param fileName the name of the file to write the picture to
+  * @return the name of the file that was written
+  * @throws IOException if the picture can't be written
+  */
+ public String writeLossless(String fileName) throws IOException
+ {
+   int posDot = findExtensionDot(fileName);
+   String extension = (posDot >= 0) ? fileName.substring(posDot + 1) : null;
+   if (!PngWriter.isLossless(extension))
+     fileName = ((posDot >= 0) ? fileName.substring(0,posDot) : fileName) + ".png";
+   writeOrFail(fileName);
+   return fileName;
+ }
+ 
+ /**
+  * Method to find the dot before the extension of a file name.  Only
+  * the last dot after the last separator counts, so dots in directory
+  * names (like /tmp/a.b/c.jpg) are skipped.
+  * @param fileName the file name
+  * @return the index of the dot, or -1 if the name has no extension
+  */
+ private static int findExtensionDot(String fileName)
+ {
+   int posSlash = Math.max(fileName.lastIndexOf('/'), 
+                           fileName.lastIndexOf(File.separatorChar));
+   int posDot = fileName.lastIndexOf('.');
+   return (posDot > posSlash) ? posDot : -1;
+ }
 
  /**
   * Method to write the contents of the picture to a file with 
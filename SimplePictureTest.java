@@ -0,0 +1,254 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DirectColorModel;
+
+/**
+ * Class that tests how SimplePicture copies, shares, and frees pictures.  Run
+ * it from the folder with the pictures (it reads leftArrow.gif):
+ * <pre>
+ *   java SimplePictureTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class SimplePictureTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to tell if a picture's image is packed RGB or ARGB ints
+   * @param picture the picture to check
+   * @return true if the image has a direct color model
+   */
+  private static boolean isPacked(SimplePicture picture)
+  {
+    return picture.getBufferedImage().getColorModel() instanceof DirectColorModel;
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that a copy of an indexed or gray picture is packed
+   * RGB, so that changes to it aren't rounded to the old colors
+   */
+  public static void testCopyIsPacked()
+  {
+    Picture gif = new Picture("leftArrow.gif");
+    Picture gray = new Picture(new BufferedImage(30,20,BufferedImage.TYPE_BYTE_GRAY));
+    for (Picture source : new Picture[] {gif, gray})
+    {
+      Picture copy = new Picture(source);
+      copy.setBasicPixel(1,1,0x123457);
+      check(isPacked(copy),"the copy wasn't made packed RGB");
+      check((copy.getBasicPixel(1,1) & 0xffffff) == 0x123457,"a change was rounded");
+      check(Steganography.isSame(source,new Picture(source)),"a copy changed the colors");
+    }
+  }
+
+  /**
+   * Method to test hiding text in a gif (this used to reveal "")
+   */
+  public static void testHideTextInGif()
+  {
+    Picture source = new Picture("leftArrow.gif");
+    Picture hidden = Steganography.hideText(source,"HELLO WORLD");
+    check(Steganography.revealText(hidden).equals("HELLO WORLD"),
+          "the text was lost");
+  }
+
+  /**
+   * Method to test that a copy shares the pixels until one of the two
+   * pictures changes
+   */
+  public static void testCopyOnWrite()
+  {
+    Picture p1 = new Picture(40,50);
+    Picture p2 = new Picture(p1);
+    check(p1.isShared() && p2.isShared(),"the copy didn't share the image");
+    int old = p1.getBasicPixel(3,4);
+    p2.setBasicPixel(3,4,~old);
+    check(p1.getBasicPixel(3,4) == old,"a change to the copy changed the picture");
+    check(!p2.isShared(),"the copy still shares the image after a change");
+    p1.setBasicPixel(0,0,0x0000ff);
+    check((p2.getBasicPixel(0,0) & 0xffffff) != 0x0000ff,
+          "a change to the picture changed the copy");
+  }
+
+  /**
+   * Method to test that drawing with a graphics object from before a
+   * copy doesn't change the copy
+   */
+  public static void testGraphicsBeforeCopy()
+  {
+    Picture p1 = new Picture(40,50);
+    Graphics g = p1.getGraphics();
+    Picture p2 = new Picture(p1);
+    g.setColor(Color.RED);
+    g.fillRect(0,0,10,10);
+    check((p1.getBasicPixel(5,5) & 0xffffff) == 0xff0000,"the drawing was lost");
+    check((p2.getBasicPixel(5,5) & 0xffffff) != 0xff0000,"the drawing changed the copy");
+  }
+
+  /**
+   * Method to test that the image from getImage or getBufferedImage
+   * belongs to the picture alone, and that changes to it are seen by
+   * the content hashes
+   */
+  public static void testImageAfterCopy()
+  {
+    Picture p1 = new Picture(40,50);
+    Picture p2 = new Picture(p1);
+    ContentHash before = p1.getContentHash();
+    BufferedImage image = (BufferedImage) p1.getImage();
+    image.setRGB(1,1,0x00ff00);
+    check((p2.getBasicPixel(1,1) & 0xffffff) != 0x00ff00,"getImage changed the copy");
+    check(!before.mayBeSame(p1.getContentHash()),"the content hash wasn't updated");
+    image.setRGB(2,2,0x00ff00);
+    check(!Steganography.findDifferences(p1,p2).isEmpty(),"the change wasn't found");
+    check(Steganography.findDifferences(p1,p2).get(2,2),"the second change wasn't found");
+
+    Picture p3 = new Picture(40,50);
+    BufferedImage image3 = p3.getBufferedImage();
+    Picture p4 = new Picture(p3);
+    image3.setRGB(0,0,0x0000ff);
+    check((p4.getBasicPixel(0,0) & 0xffffff) != 0x0000ff,
+          "an image from before a copy changed the copy");
+  }
+
+  /**
+   * Method to run the garbage collector until a picture's views are
+   * gone, so that a copy of it shares its pixels again
+   * @param picture the picture whose views have been dropped
+   * @return true if a copy shares the pixels before giving up
+   * @throws InterruptedException if the wait is interrupted
+   */
+  private static boolean waitForViewsToGo(Picture picture) throws InterruptedException
+  {
+    for (int i = 0; i < 100; i++)
+    {
+      System.gc();
+      if (new Picture(picture).isShared())
+        return true;
+      Thread.sleep(10);
+    }
+    return false;
+  }
+
+  /**
+   * Method to test that a view changes its picture, that a picture
+   * with a view is copied right away, and that it shares pixels with
+   * its copies again once the view is dropped
+   * @throws InterruptedException if the wait for the garbage collector
+   * is interrupted
+   */
+  public static void testViews() throws InterruptedException
+  {
+    Picture picture = new Picture(100,100);
+    Picture view = picture.view(10,20,30,40);
+    check(view.isView() && !picture.isView(),"isView is wrong");
+    view.setBasicPixel(0,0,0x00ff00);
+    check((picture.getBasicPixel(10,20) & 0xffffff) == 0x00ff00,
+          "the view didn't change the picture");
+    Picture copy = new Picture(picture);
+    check(!copy.isShared(),"a picture with a view was shared");
+    view.setBasicPixel(1,1,0x0000ff);
+    check((copy.getBasicPixel(11,21) & 0xffffff) != 0x0000ff,
+          "the view changed a copy");
+
+    // like Picture.mirrorTemple, which drops its view at once
+    view = null;
+    check(waitForViewsToGo(picture),"the picture still acts viewed");
+    check(picture.getContentHash() == picture.getContentHash(),
+          "the content hash isn't kept after the view is gone");
+
+    // a view whose image was handed out still writes to the picture
+    BufferedImage image = picture.view(0,0,10,10).getBufferedImage();
+    check(!waitForViewsToGo(picture),"a handed out view image was forgotten");
+    image.setRGB(0,0,0xff0000);
+    check((picture.getBasicPixel(0,0) & 0xffffff) == 0xff0000,
+          "the view image didn't change the picture");
+  }
+
+  /**
+   * Method to tell if something throws an IllegalStateException
+   * @param action the thing to run
+   * @return true if it threw one
+   */
+  private static boolean throwsIllegalState(Runnable action)
+  {
+    try
+    {
+      action.run();
+      return false;
+    }
+    catch (IllegalStateException ex)
+    {
+      return true;
+    }
+  }
+
+  /**
+   * Method to test that an off-heap picture keeps its pixels, that
+   * close() frees them, and that any use after that fails clearly
+   */
+  public static void testOffHeapClose()
+  {
+    Picture picture = RawImageFileTest.makePicture(60,40,false);
+    Picture expected = new Picture(picture);
+    picture.moveOffHeap();
+    check(picture.isOffHeap(),"the picture wasn't moved off-heap");
+    check(RawImageFileTest.samePixels(picture,expected),"moving changed the pixels");
+    check(picture.getRasterBuffer() == null,"the off-heap buffer was handed out");
+    Picture copy = new Picture(picture);
+    Picture view = picture.view(5,5,10,10);
+    BufferedImage image = picture.getBufferedImage();
+
+    picture.close();
+    check(throwsIllegalState(() -> picture.getBasicPixel(0,0)),"a read after close worked");
+    check(throwsIllegalState(() -> picture.setBasicPixel(0,0,0)),"a write after close worked");
+    check(throwsIllegalState(() -> view.getBasicPixel(0,0)),"a view read after close worked");
+    check(throwsIllegalState(() -> image.getRGB(0,0)),"an image read after close worked");
+    check(throwsIllegalState(() -> new Picture(picture)),"a copy after close worked");
+    check(picture.getWidth() == 60,"the size was lost");
+    check(RawImageFileTest.samePixels(copy,expected),"close changed an earlier copy");
+    view.close();
+    picture.close();
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws InterruptedException if a test is interrupted
+   */
+  public static void main(String[] args) throws InterruptedException
+  {
+    testCopyIsPacked();
+    System.out.println("testCopyIsPacked passed");
+    testHideTextInGif();
+    System.out.println("testHideTextInGif passed");
+    testCopyOnWrite();
+    System.out.println("testCopyOnWrite passed");
+    testGraphicsBeforeCopy();
+    System.out.println("testGraphicsBeforeCopy passed");
+    testImageAfterCopy();
+    System.out.println("testImageAfterCopy passed");
+    testViews();
+    System.out.println("testViews passed");
+    testOffHeapClose();
+    System.out.println("testOffHeapClose passed");
+  }
+
+}
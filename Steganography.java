@@ -1,50 +1,85 @@
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class Steganography {
 
     public static void clearLow(Pixel p) {
-        int r = (p.getRed() / 4) * 4;
-        int g = (p.getGreen() / 4) * 4;
-        int b = (p.getBlue() / 4) * 4;
-        p.setColor(new Color(r, g, b));
+        p.setRGB(clearLow(p.getRGB()));
+    }
+
+    private static int clearLow(int rgb) {
+        return rgb & ~LowBits.MASK;
     }
 
     public static Picture testClearLow(Picture pic) {
         Picture copy = new Picture(pic);
-        for (Pixel[] row : copy.getPixels2D())
-            for (Pixel px : row) clearLow(px);
+        copy.forEachRow((px, off, len, row) -> LowBits.clear(px, off, off + len));
         return copy;
     }
 
     public static void setLow(Pixel p, Color c) {
-        clearLow(p);
-        Color old = p.getColor();
-        int r = old.getRed() + c.getRed() / 64;
-        int g = old.getGreen() + c.getGreen() / 64;
-        int b = old.getBlue() + c.getBlue() / 64;
-        p.setColor(new Color(r, g, b));
+        p.setRGB(setLow(p.getRGB(), c.getRGB()));
+    }
+
+    private static int setLow(int rgb, int c) {
+        return clearLow(rgb) | ((c >> 6) & LowBits.MASK);
     }
 
     public static Picture testSetLow(Picture pic, Color c) {
         Picture copy = new Picture(pic);
-        for (Pixel[] row : copy.getPixels2D())
-            for (Pixel px : row) setLow(px, c);
+        int color = c.getRGB();
+        copy.forEachRow((px, off, len, row) -> LowBits.set(px, off, off + len, color));
         return copy;
     }
 
+    /**
+     * Reveals a hidden picture.  A picture hidden with a depth has a header
+     * giving the depth and size; one without a header is read at 2 bits.
+     */
     public static Picture revealPicture(Picture hidden) {
-        Picture copy = new Picture(hidden);
-        Pixel[][] src = hidden.getPixels2D();
-        Pixel[][] dst = copy.getPixels2D();
-        for (int r = 0; r < dst.length; r++)
-            for (int c = 0; c < dst[0].length; c++) {
-                Color col = src[r][c].getColor();
-                int r2 = (col.getRed() % 4) * 64;
-                int g2 = (col.getGreen() % 4) * 64;
-                int b2 = (col.getBlue() % 4) * 64;
-                dst[r][c].setColor(new Color(r2, g2, b2));
+        byte[] header = StegoInputStream.readHeader(hidden, new int[hidden.getWidth()]);
+        int depth = StegoInputStream.getDepth(header, StegoOutputStream.FORMAT_PICTURE);
+        if (depth < 0)
+            return revealPicture(hidden, LowBits.DEFAULT_DEPTH);
+
+        int width = ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+        int height = ((header[4] & 0xff) << 8) | (header[5] & 0xff);
+        if (width == 0 || width > hidden.getWidth()) width = hidden.getWidth();
+        if (height == 0 || height > hidden.getHeight()) height = hidden.getHeight();
+        Picture revealed = new Picture(height, width);
+        int cols = width;
+        BandExecutor.getDefault().forEachBand(cols, height, (startRow, endRow) -> {
+            int[] px = new int[cols];
+            for (int r = startRow; r < endRow; r++) {
+                hidden.getBasicPixels(0, r, cols, 1, px);
+                LowBits.reveal(px, 0, cols, depth);
+                revealed.setBasicPixels(0, r, cols, 1, px);
             }
+        });
+
+        // the header took the place of the first pixels, so fill them from the row below
+        int headerCols = Math.min(StegoOutputStream.HEADER_PIXELS, cols);
+        if (height > 1 && headerCols > 0) {
+            int[] px = new int[headerCols];
+            revealed.getBasicPixels(0, 1, headerCols, 1, px);
+            revealed.setBasicPixels(0, 0, headerCols, 1, px);
+        }
+        return revealed;
+    }
+
+    /** Reveals a picture hidden in the given number of low bits of each color. */
+    public static Picture revealPicture(Picture hidden, int depth) {
+        LowBits.checkDepth(depth);
+        Picture copy = new Picture(hidden);
+        copy.forEachRow((px, off, len, row) -> LowBits.reveal(px, off, off + len, depth));
+        copy.setCarrier(false);
         return copy;
     }
 
@@ -52,18 +87,115 @@ public class Steganography {
         return source.getWidth() >= secret.getWidth() && source.getHeight() >= secret.getHeight();
     }
 
+    /** Tells if a payload of this many bytes fits in the source at a depth. */
+    public static boolean canHide(DigitalPicture source, long payloadBytes, int depth) {
+        return payloadBytes <= getByteCapacity(source, depth);
+    }
+
+    /** Tells if the secret fits in the source using only the file headers. */
+    public static boolean canHide(ImageInfo source, ImageInfo secret) {
+        return source.getWidth() >= secret.getWidth() && source.getHeight() >= secret.getHeight();
+    }
+
+    /** Probes both files (without decoding them) and tells if the secret fits. */
+    public static boolean canHide(String sourceFile, String secretFile) throws IOException {
+        return canHide(ImageInfo.probe(sourceFile), ImageInfo.probe(secretFile));
+    }
+
+    public static boolean canHide(ImageInfo source, long payloadBytes, int depth) {
+        return payloadBytes <= getByteCapacity(source, depth);
+    }
+
+    public static boolean canHide(String sourceFile, long payloadBytes, int depth) throws IOException {
+        return canHide(ImageInfo.probe(sourceFile), payloadBytes, depth);
+    }
+
     public static Picture hidePicture(Picture source, Picture secret) {
         Picture hidden = new Picture(source);
-        Pixel[][] hp = hidden.getPixels2D();
-        Pixel[][] sp = secret.getPixels2D();
-        int rows = Math.min(hp.length, sp.length);
-        int cols = Math.min(hp[0].length, sp[0].length);
-        for (int r = 0; r < rows; r++)
-            for (int c = 0; c < cols; c++)
-                setLow(hp[r][c], sp[r][c].getColor());
+        int rows = Math.min(hidden.getHeight(), secret.getHeight());
+        int cols = Math.min(hidden.getWidth(), secret.getWidth());
+        BandExecutor.getDefault().forEachBand(cols, rows, (startRow, endRow) -> {
+            int[] hp = new int[cols], sp = new int[cols];
+            for (int r = startRow; r < endRow; r++) {
+                hidden.getBasicPixels(0, r, cols, 1, hp);
+                secret.getBasicPixels(0, r, cols, 1, sp);
+                LowBits.set(hp, 0, cols, sp, 0);
+                hidden.setBasicPixels(0, r, cols, 1, hp);
+            }
+        });
+        hidden.setCarrier(true);
         return hidden;
     }
 
+    /**
+     * Hides the top depth bits of each color of the secret in the low bits
+     * of the source, with a header giving the depth and the secret's size.
+     */
+    public static Picture hidePicture(Picture source, Picture secret, int depth) {
+        LowBits.checkDepth(depth);
+        Picture hidden = new Picture(source);
+        int rows = Math.min(hidden.getHeight(), secret.getHeight());
+        int cols = Math.min(hidden.getWidth(), secret.getWidth());
+        BandExecutor.getDefault().forEachBand(cols, rows, (startRow, endRow) -> {
+            int[] hp = new int[cols], sp = new int[cols];
+            for (int r = startRow; r < endRow; r++) {
+                hidden.getBasicPixels(0, r, cols, 1, hp);
+                secret.getBasicPixels(0, r, cols, 1, sp);
+                LowBits.set(hp, 0, cols, sp, 0, depth);
+                hidden.setBasicPixels(0, r, cols, 1, hp);
+            }
+        });
+
+        if ((long) hidden.getWidth() * hidden.getHeight() >= StegoOutputStream.HEADER_PIXELS)
+            StegoOutputStream.writeHeader(hidden, pictureHeader(cols, rows, depth), new int[hidden.getWidth()]);
+        hidden.setCarrier(true);
+        return hidden;
+    }
+
+    /** Makes the header for a hidden picture; a size too big for 16 bits is saved as 0 (the whole carrier). */
+    private static byte[] pictureHeader(int cols, int rows, int depth) {
+        byte[] header = StegoOutputStream.createHeader(StegoOutputStream.FORMAT_PICTURE, depth, 0,
+                                                       StegoOutputStream.HEADER_BYTES);
+        int width = cols > 0xffff ? 0 : cols;
+        int height = rows > 0xffff ? 0 : rows;
+        header[2] = (byte) (width >> 8);
+        header[3] = (byte) width;
+        header[4] = (byte) (height >> 8);
+        header[5] = (byte) height;
+        return header;
+    }
+
+    /**
+     * Hides the secret file in the source file and writes the target file a
+     * band of rows at a time (see StegoPipeline), so neither picture has to
+     * fit in memory.  The result is the same as hidePicture(source, secret, depth).
+     */
+    public static void hidePicture(String sourceFile, String secretFile, String targetFile, int depth)
+            throws IOException {
+        LowBits.checkDepth(depth);
+        StegoPipeline pipeline = new StegoPipeline(sourceFile, StegoPipeline.DEFAULT_BAND_ROWS);
+        ImageInfo secret = ImageInfo.probe(secretFile);
+        String secretPath = secret.getFile().getPath();
+        int rows = Math.min(pipeline.getHeight(), secret.getHeight());
+        int cols = Math.min(pipeline.getWidth(), secret.getWidth());
+        byte[] header = pictureHeader(cols, rows, depth);
+        boolean hasHeader = (long) pipeline.getWidth() * pipeline.getHeight() >= StegoOutputStream.HEADER_PIXELS;
+        pipeline.run(targetFile, (band, startRow) -> {
+            int endRow = Math.min(rows, startRow + band.getHeight());
+            if (startRow < endRow) {
+                Picture sp = StegoPipeline.readRows(secretPath, secret.getWidth(), startRow, endRow);
+                // one array for the whole band, read-only, so the rows can run on any thread
+                int[] s = sp.getBasicPixels(0, 0, cols, endRow - startRow, null);
+                band.forEachRow((px, off, len, row) -> {
+                    if (row < endRow - startRow)
+                        LowBits.set(px, off, off + cols, s, row * cols, depth);
+                });
+            }
+            if (startRow == 0 && hasHeader)
+                StegoOutputStream.writeHeader(band, header, new int[band.getWidth()]);
+        });
+    }
+
     public static ArrayList<Integer> encodeString(String s) {
         s = s.toUpperCase();
         String alpha = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
@@ -74,82 +206,419 @@ public class Steganography {
         return codes;
     }
 
-    private static String decodeString(ArrayList<Integer> codes) {
+    /** Appends the letter for one code of the old 27-symbol format. */
+    private static void decodeLegacy(int code, StringBuilder sb) {
+        if (code == 27) sb.append(' ');
+        else if (code > 0 && code < 27) sb.append((char) ('A' + code - 1));
+    }
+
+    public static Picture hideText(Picture source, String msg) {
+        return hideText(source, msg, LowBits.DEFAULT_DEPTH);
+    }
+
+    public static Picture hideText(Picture source, String msg, int depth) {
+        return hideBytes(source, msg.getBytes(StandardCharsets.UTF_8), depth);
+    }
+
+    /** Hides the bytes with a length header; see StegoOutputStream. */
+    public static Picture hideBytes(Picture source, byte[] data) {
+        return hideBytes(source, data, LowBits.DEFAULT_DEPTH);
+    }
+
+    /** Hides the bytes in the given number of low bits of each color. */
+    public static Picture hideBytes(Picture source, byte[] data, int depth) {
+        checkFits(source, data.length, depth);
+        Picture stego = new Picture(source);
+        hideBytesInPlace(stego, data, depth);
+        return stego;
+    }
+
+    /**
+     * Hides the bytes in the carrier itself instead of a copy, so it works on
+     * any DigitalPicture, like a TiledPicture much bigger than the heap.
+     */
+    public static void hideBytesInPlace(DigitalPicture carrier, byte[] data, int depth) {
+        checkFits(carrier, data.length, depth);
+        try (StegoOutputStream out = new StegoOutputStream(carrier, depth)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Throws an IllegalArgumentException if the payload doesn't fit in the carrier. */
+    private static void checkFits(DigitalPicture carrier, long payloadBytes, int depth) {
+        long capacity = getByteCapacity(carrier, depth);
+        if (capacity < 0)
+            throw new IllegalArgumentException("a " + carrier.getWidth() + "x" + carrier.getHeight() +
+                " picture is too small to hold a header");
+        if (payloadBytes > capacity)
+            throw new IllegalArgumentException("payload of " + payloadBytes +
+                " bytes is too big for a " + carrier.getWidth() + "x" + carrier.getHeight() +
+                " picture at depth " + depth + " (capacity " + capacity + ")");
+    }
+
+    public static void hideText(String sourceFile, String targetFile, String msg) throws IOException {
+        hideBytes(sourceFile, targetFile, msg.getBytes(StandardCharsets.UTF_8), LowBits.DEFAULT_DEPTH);
+    }
+
+    /**
+     * Hides the bytes in the source file and writes the target file a band
+     * of rows at a time (see StegoPipeline), so the carrier never has to
+     * fit in memory.  The result is the same as hideBytes(source, data, depth).
+     */
+    public static void hideBytes(String sourceFile, String targetFile, byte[] data, int depth)
+            throws IOException {
+        LowBits.checkDepth(depth);
+        StegoPipeline pipeline = new StegoPipeline(sourceFile, StegoPipeline.DEFAULT_BAND_ROWS);
+        int width = pipeline.getWidth();
+        long capacity = StegoOutputStream.getCapacity(width, pipeline.getHeight(), depth,
+                                                      StegoOutputStream.HEADER_PIXELS);
+        if (data.length > capacity)
+            throw new IllegalArgumentException("payload of " + data.length +
+                " bytes is too big for a " + width + "x" + pipeline.getHeight() +
+                " picture at depth " + depth + " (capacity " + capacity + ")");
+        byte[] header = StegoOutputStream.createHeader(StegoOutputStream.FORMAT_BYTES, depth,
+                                                       data.length, StegoOutputStream.HEADER_BYTES);
+        int[] headerCodes = new int[StegoOutputStream.HEADER_PIXELS];
+        LowBits.bytesToCodes(header, 0, header.length, headerCodes, 0);
+        long headerEnd = StegoOutputStream.HEADER_PIXELS;
+        long payloadEnd = headerEnd + LowBits.codesFor(data.length, depth);
+
+        // whole groups of bytes turn into whole groups of codes, so a band
+        // only needs the codes for the bytes that land in it
+        int groupBits = (depth == 3) ? 72 : 24;   // lcm(8, 3 * depth)
+        int groupBytes = groupBits / 8;
+        int groupCodes = groupBits / (3 * depth);
+
+        pipeline.run(targetFile, (band, startRow) -> {
+            long first = (long) startRow * width;
+            long end = first + (long) band.getHeight() * width;
+            int[] pixels = new int[width];
+            if (first < headerEnd) {
+                int n = (int) (Math.min(end, headerEnd) - first);
+                StegoOutputStream.writeCodes(band, 0, headerCodes, (int) first, n, pixels,
+                                             LowBits.DEFAULT_DEPTH);
+            }
+            long from = Math.max(first, headerEnd);
+            long to = Math.min(end, payloadEnd);
+            if (from < to) {
+                long firstCode = from - headerEnd;
+                long group = firstCode / groupCodes;
+                int byteFrom = (int) (group * groupBytes);
+                int byteTo = (int) Math.min(data.length,
+                    ((to - headerEnd + groupCodes - 1) / groupCodes) * groupBytes);
+                int[] codes = new int[LowBits.codesFor(byteTo - byteFrom, depth)];
+                LowBits.bytesToCodes(data, byteFrom, byteTo, codes, 0, depth);
+                StegoOutputStream.writeCodes(band, from - first, codes,
+                                             (int) (firstCode - group * groupCodes),
+                                             (int) (to - from), pixels, depth);
+            }
+        });
+    }
+
+    public static int getByteCapacity(DigitalPicture source) {
+        return getByteCapacity(source, LowBits.DEFAULT_DEPTH);
+    }
+
+    public static int getByteCapacity(DigitalPicture source, int depth) {
+        return (int) StegoOutputStream.getCapacity(source, depth);
+    }
+
+    public static int getByteCapacity(ImageInfo source, int depth) {
+        return (int) StegoOutputStream.getCapacity(source, depth);
+    }
+
+    public static byte[] revealBytes(DigitalPicture source) {
+        try (StegoInputStream in = new StegoInputStream(source)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    public static String revealText(DigitalPicture source) {
+        if (StegoInputStream.hasPayload(source))
+            return new String(revealBytes(source), StandardCharsets.UTF_8);
+        return revealLegacyText(source);
+    }
+
+    /**
+     * Reveals the text in a picture file.  The header is read from the
+     * first row(s) and then only the rows that hold the message are
+     * decoded; files without a header are loaded in full.
+     */
+    public static String revealText(String fileName) throws IOException {
+        ImageInfo info = ImageInfo.probe(fileName);
+        int width = info.getWidth();
+        int height = info.getHeight();
+        String path = info.getFile().getPath();
+        int headerRows = Math.min(height, (StegoOutputStream.HEADER_PIXELS + width - 1) / width);
+        Picture top = new Picture(1, 1);
+        top.loadOrFail(path, new Rectangle(0, 0, width, headerRows), 1, 1);
+        long pixels = StegoInputStream.getPayloadPixels(
+            StegoInputStream.readHeader(top, new int[width]), width, height);
+        if (pixels < 0) {
+            top.loadOrFail(path);
+            return revealText(top);
+        }
+        int rows = (int) Math.min(height, (pixels + width - 1) / width);
+        if (rows > headerRows)
+            top.loadOrFail(path, new Rectangle(0, 0, width, rows), 1, 1);
+        return new String(revealBytes(top), StandardCharsets.UTF_8);
+    }
+
+    /** Reads a message in the old 27-symbol format, which ends at a 0 code. */
+    public static String revealLegacyText(DigitalPicture source) {
         StringBuilder sb = new StringBuilder();
-        String alpha = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-        for (int code : codes) {
-            if (code == 27) sb.append(' ');
-            else if (code > 0) sb.append(alpha.charAt(code - 1));
+        int width = source.getWidth();
+        int[] px = new int[width];
+        int[] codes = new int[width];
+        for (int r = 0; r < source.getHeight(); r++) {
+            source.getBasicRow(r, px);
+            LowBits.getCodes(px, 0, width, codes, 0);
+            for (int c = 0; c < width; c++) {
+                if (codes[c] == 0) return sb.toString();
+                decodeLegacy(codes[c], sb);
+            }
         }
         return sb.toString();
     }
 
-    private static int[] getBitPairs(int num) {
-        int[] bits = new int[3];
-        for (int i = 0; i < 3; i++) {
-            bits[i] = num % 4;
-            num /= 4;
+    /**
+     * Tells how many bytes can be split over the carriers at a depth, or -1
+     * if a carrier is too small to hold a shard header.
+     */
+    public static long getByteCapacity(List<Picture> carriers, int depth) {
+        long total = 0;
+        for (Picture p : carriers) {
+            long cap = StegoOutputStream.getShardCapacity(p, depth);
+            if (cap < 0) return -1;
+            total += cap;
         }
-        return bits;
+        return total;
     }
 
-    public static Picture hideText(Picture source, String msg) {
-        ArrayList<Integer> code = encodeString(msg);
-        Picture stego = new Picture(source);
-        Pixel[][] px = stego.getPixels2D();
-        int idx = 0;
-        outer:
-        for (int r = 0; r < px.length; r++)
-            for (int c = 0; c < px[0].length; c++) {
-                if (idx >= code.size()) break outer;
-                int[] bits = getBitPairs(code.get(idx++));
-                Pixel p = px[r][c];
-                clearLow(p);
-                Color old = p.getColor();
-                p.setColor(new Color(old.getRed() + bits[0], old.getGreen() + bits[1], old.getBlue() + bits[2]));
+    public static boolean canHide(List<Picture> carriers, long payloadBytes, int depth) {
+        return carriers.size() <= StegoOutputStream.MAX_SHARDS &&
+            payloadBytes <= getByteCapacity(carriers, depth);
+    }
+
+    /**
+     * Splits the bytes into one shard per carrier and hides the shards in
+     * parallel.  Each carrier gets a share in proportion to its capacity,
+     * and each shard's header has its sequence number and the shard count.
+     */
+    public static ArrayList<Picture> hideShards(List<Picture> carriers, byte[] data, int depth) {
+        int total = carriers.size();
+        if (total == 0 || !canHide(carriers, data.length, depth))
+            throw new IllegalArgumentException("payload of " + data.length + " bytes is too big for " +
+                total + " carriers at depth " + depth + " (capacity " + getByteCapacity(carriers, depth) + ")");
+
+        int[] starts = new int[total + 1];
+        long remaining = data.length;
+        long remainingCap = getByteCapacity(carriers, depth);
+        for (int i = 0; i < total; i++) {
+            long cap = StegoOutputStream.getShardCapacity(carriers.get(i), depth);
+            long share = Math.min(cap, Math.round((double) remaining * cap / Math.max(1, remainingCap)));
+            // never leave more than the later carriers can hold
+            share = Math.max(share, remaining - (remainingCap - cap));
+            starts[i + 1] = starts[i] + (int) share;
+            remaining -= share;
+            remainingCap -= cap;
+        }
+
+        // a random id, so that shards of two hides (even of the same bytes)
+        // are almost never taken for one payload
+        int payloadId = ThreadLocalRandom.current().nextInt();
+        Picture[] shards = new Picture[total];
+        BandExecutor.getDefault().forEachItem(total, (first, end) -> {
+            for (int i = first; i < end; i++) {
+                Picture stego = new Picture(carriers.get(i));
+                try (StegoOutputStream out = new StegoOutputStream(stego, depth, payloadId, i, total)) {
+                    out.write(data, starts[i], starts[i + 1] - starts[i]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                shards[i] = stego;
             }
-        return stego;
+        });
+        return new ArrayList<>(Arrays.asList(shards));
     }
 
-    public static String revealText(Picture source) {
-        ArrayList<Integer> codes = new ArrayList<>();
-        Pixel[][] px = source.getPixels2D();
-        outer:
-        for (Pixel[] row : px)
-            for (Pixel p : row) {
-                Color col = p.getColor();
-                int code = (col.getRed() % 4) + (col.getGreen() % 4) * 4 + (col.getBlue() % 4) * 16;
-                if (code == 0) break outer;
-                codes.add(code);
+    /**
+     * Reads the shards hidden by hideShards in parallel and joins them in
+     * sequence order.  The carriers can be given in any order.  Throws an
+     * IllegalArgumentException if there are no carriers.
+     */
+    public static byte[] revealShards(List<Picture> carriers) {
+        int n = carriers.size();
+        if (n == 0)
+            throw new IllegalArgumentException("no shards to reassemble");
+        byte[][] parts = new byte[n][];
+        int[][] info = new int[n][];
+        BandExecutor.getDefault().forEachItem(n, (first, end) -> {
+            for (int i = first; i < end; i++) {
+                try (StegoInputStream in = new StegoInputStream(carriers.get(i))) {
+                    if (!in.isShard())
+                        throw new IllegalArgumentException(carriers.get(i) + " does not hold a shard");
+                    info[i] = new int[] {in.getPayloadId(), in.getSequence(), in.getTotal()};
+                    parts[i] = in.readAllBytes();
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e.getMessage(), e);
+                }
             }
-        return decodeString(codes);
+        });
+
+        int total = info[0][2];
+        if (n != total)
+            throw new IllegalArgumentException("expected " + total + " shards but got " + n);
+        byte[][] ordered = new byte[total][];
+        long length = 0;
+        for (int i = 0; i < n; i++) {
+            if (info[i][0] != info[0][0] || info[i][2] != total)
+                throw new IllegalArgumentException("shards are from more than one payload");
+            if (ordered[info[i][1]] != null)
+                throw new IllegalArgumentException("shard " + info[i][1] + " was given twice");
+            ordered[info[i][1]] = parts[i];
+            length += parts[i].length;
+        }
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("payload of " + length + " bytes is too big for an array");
+
+        byte[] data = new byte[(int) length];
+        int pos = 0;
+        for (byte[] part : ordered) {
+            System.arraycopy(part, 0, data, pos, part.length);
+            pos += part.length;
+        }
+        return data;
+    }
+
+    public static ArrayList<Picture> hideTextShards(List<Picture> carriers, String msg, int depth) {
+        return hideShards(carriers, msg.getBytes(StandardCharsets.UTF_8), depth);
     }
 
+    public static String revealTextShards(List<Picture> carriers) {
+        return new String(revealShards(carriers), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compares colors pixel by pixel, but returns false at once when the
+     * cached content hashes differ.
+     */
     public static boolean isSame(Picture p1, Picture p2) {
         if (p1.getWidth() != p2.getWidth() || p1.getHeight() != p2.getHeight())
             return false;
-        Pixel[][] a = p1.getPixels2D(), b = p2.getPixels2D();
-        for (int r = 0; r < a.length; r++)
-            for (int c = 0; c < a[0].length; c++)
-                if (!a[r][c].getColor().equals(b[r][c].getColor())) return false;
+        if (p1 == p2) return true;
+        if (!p1.getContentHash().mayBeSame(p2.getContentHash()))
+            return false;
+        int[] a = new int[p1.getWidth()], b = new int[p1.getWidth()];
+        for (int r = 0; r < p1.getHeight(); r++) {
+            p1.getBasicRow(r, a);
+            p2.getBasicRow(r, b);
+            for (int c = 0; c < a.length; c++)
+                if (!sameColor(a[c], b[c])) return false;
+        }
         return true;
     }
 
-    public static ArrayList<Point> findDifferences(Picture p1, Picture p2) {
-        ArrayList<Point> list = new ArrayList<>();
-        if (!isSameSize(p1, p2)) return list;
-        Pixel[][] a = p1.getPixels2D(), b = p2.getPixels2D();
-        for (int r = 0; r < a.length; r++)
-            for (int c = 0; c < a[0].length; c++)
-                if (!a[r][c].getColor().equals(b[r][c].getColor()))
-                    list.add(new Point(r, c));
-        return list;
+    /** Tells if no pixel's color is farther from the other's than the tolerance allows. */
+    public static boolean isSame(Picture p1, Picture p2, ColorTolerance tolerance) {
+        return isSameSize(p1, p2) && findDifferences(p1, p2, tolerance).isEmpty();
+    }
+
+    /** Colors are compared without alpha, like Pixel.getColor() does. */
+    private static boolean sameColor(int rgb1, int rgb2) {
+        return ((rgb1 ^ rgb2) & 0xffffff) == 0;
+    }
+
+    /**
+     * Marks the pixels whose colors differ.  The mask has one bit per pixel,
+     * so no object is made per difference.  Tiles whose content hashes match
+     * are skipped; the hashes are keyed at random each run, so a changed tile
+     * keeps its hash only about once in 2 to the 64th (see ContentHash).
+     * Pictures of different sizes give an empty mask the size of p1.
+     */
+    public static DiffMask findDifferences(Picture p1, Picture p2) {
+        return findDifferences(p1, p2, ColorTolerance.EXACT);
+    }
+
+    /**
+     * Marks the pixels whose colors are farther apart than the tolerance
+     * allows, for comparing pictures after a lossy re-encode.  Like the exact
+     * version it runs in parallel and skips tiles whose hashes match.
+     */
+    public static DiffMask findDifferences(Picture p1, Picture p2, ColorTolerance tolerance) {
+        boolean exact = tolerance == ColorTolerance.EXACT;
+        int width = p1.getWidth(), height = p1.getHeight();
+        DiffMask mask = new DiffMask(width, height);
+        if (!isSameSize(p1, p2)) return mask;
+        ContentHash h1 = p1.getContentHash(), h2 = p2.getContentHash();
+        if (h1.getRootHash() == h2.getRootHash()) return mask;
+        int tile = ContentHash.TILE_SIZE;
+        BandExecutor.getDefault().forEachItem(h1.getTilesDown(), (firstTileRow, endTileRow) -> {
+            int[] a = new int[width], b = new int[width], flags = new int[width];
+            for (int ty = firstTileRow; ty < endTileRow; ty++) {
+                if (h1.sameTileRow(h2, ty)) continue;
+                for (int r = ty * tile; r < Math.min(height, (ty + 1) * tile); r++) {
+                    p1.getBasicRow(r, a);
+                    p2.getBasicRow(r, b);
+                    for (int tx = 0; tx < h1.getTilesAcross(); tx++) {
+                        if (h1.sameTile(h2, tx, ty)) continue;
+                        int from = tx * tile, to = Math.min(width, from + tile);
+                        if (exact) {
+                            mask.setDifferences(r, a, b, from, to);
+                        } else {
+                            tolerance.markDifferent(a, b, from, to, flags);
+                            mask.setFlags(r, flags, from, to);
+                        }
+                    }
+                }
+            }
+        });
+        return mask;
     }
 
     private static boolean isSameSize(Picture a, Picture b) {
         return a.getWidth() == b.getWidth() && a.getHeight() == b.getHeight();
     }
 
+    /** Draws a red box around the marked pixels. */
+    public static Picture showDifferentArea(Picture src, DiffMask diffs) {
+        return showDifferentArea(src, diffs, false);
+    }
+
+    /**
+     * Draws a red box around the marked pixels, or around each separate
+     * region of touching marked pixels when eachRegion is true.
+     */
+    public static Picture showDifferentArea(Picture src, DiffMask diffs, boolean eachRegion) {
+        Picture out = new Picture(src);
+        if (eachRegion) {
+            for (Rectangle box : diffs.findRegions())
+                drawBox(out, box);
+        } else {
+            Rectangle box = diffs.getBoundingBox();
+            if (box != null)
+                drawBox(out, box);
+        }
+        return out;
+    }
+
+    /**
+     * Draws a red box around the pixels that differ between src and other,
+     * found in one parallel pass without building a mask or point list.
+     */
+    public static Picture showDifferentArea(Picture src, Picture other) {
+        if (!isSameSize(src, other)) return new Picture(src);
+        Rectangle box = DiffStats.compare(src, other).getBoundingBox();
+        Picture out = new Picture(src);
+        if (box != null)
+            drawBox(out, box);
+        return out;
+    }
+
     public static Picture showDifferentArea(Picture src, ArrayList<Point> pts) {
         if (pts.isEmpty()) return new Picture(src);
         int minR = Integer.MAX_VALUE, minC = Integer.MAX_VALUE, maxR = -1, maxC = -1;
@@ -160,17 +629,30 @@ public class Steganography {
             maxC = Math.max(maxC, p.getCol());
         }
         Picture out = new Picture(src);
-        Pixel[][] px = out.getPixels2D();
-        Color red = Color.RED;
+        drawBox(out, minR, minC, maxR, maxC);
+        return out;
+    }
+
+    private static void drawBox(Picture out, Rectangle box) {
+        drawBox(out, box.y, box.x, box.y + box.height - 1, box.x + box.width - 1);
+    }
+
+    private static void drawBox(Picture out, int minR, int minC, int maxR, int maxC) {
+        int red = Color.RED.getRGB();
+        PixelCursor px = new PixelCursor(out);
         for (int c = minC; c <= maxC; c++) {
-            px[minR][c].setColor(red);
-            px[maxR][c].setColor(red);
+            px.moveTo(c, minR);
+            px.setRGB(red);
         }
+        for (int c = minC; c <= maxC; c++) {
+            px.moveTo(c, maxR);
+            px.setRGB(red);
+        }
+        px.flush();
         for (int r = minR; r <= maxR; r++) {
-            px[r][minC].setColor(red);
-            px[r][maxC].setColor(red);
+            out.getPixel(minC, r).setRGB(red);
+            out.getPixel(maxC, r).setRGB(red);
         }
-        return out;
     }
 
     public static class Point {
@@ -203,7 +685,7 @@ public class Steganography {
 
         if (canHide(beach, secret)) {
             Picture altered = hidePicture(beach, secret);
-            ArrayList<Point> diffs = findDifferences(beach, altered);
+            DiffMask diffs = findDifferences(beach, altered);
             Picture boxed = showDifferentArea(beach, diffs);
             boxed.explore();
         }
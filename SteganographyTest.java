@@ -0,0 +1,194 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class that tests hiding and revealing text, bytes, and pictures with
+ * Steganography, at each depth (number of low bits used in each color).  Run it like any other class:
+ * <pre>
+ *   java SteganographyTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class SteganographyTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to make a mask with the given bits set in each color
+   * @param bits the bits for one color (like 0x03)
+   * @return the mask for red, green, and blue
+   */
+  private static int colorMask(int bits)
+  {
+    return bits * 0x010101;
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that text comes back exactly, including lower case,
+   * punctuation, and letters outside of A to Z (which the old 27-symbol
+   * format lost)
+   */
+  public static void testTextRoundTrip()
+  {
+    Picture source = RawImageFileTest.makePicture(60,40,false);
+    String[] messages = {"", "HELLO WORLD", "Hello, world! 1 + 1 = 2\n", "caf\u00e9 \u65e5\u672c"};
+    for (String msg : messages)
+      check(Steganography.revealText(Steganography.hideText(source,msg)).equals(msg),
+            "the text \"" + msg + "\" changed");
+  }
+
+  /**
+   * Method to test that text too long for the picture isn't hidden
+   */
+  public static void testTextTooLong()
+  {
+    Picture source = new Picture(20,10);
+    char[] chars = new char[Steganography.getByteCapacity(source) + 1];
+    Arrays.fill(chars,'x');
+    try
+    {
+      Steganography.hideText(source,new String(chars));
+      check(false,"text that doesn't fit was hidden");
+    }
+    catch (IllegalArgumentException ex)
+    {
+      // expected
+    }
+  }
+
+  /**
+   * Method to test reading text from a file, which reads just the rows
+   * that hold the message
+   * @throws IOException if the test file can't be written or read
+   */
+  public static void testTextFromFile() throws IOException
+  {
+    File file = Files.createTempFile("text",".png").toFile();
+    try
+    {
+      Picture hidden = Steganography.hideText(RawImageFileTest.makePicture(80,300,false),
+                                              "Just a few rows");
+      hidden.writeOrFail(file.getPath());
+      check(Steganography.revealText(file.getPath()).equals("Just a few rows"),
+            "the text read from the file changed");
+    }
+    finally
+    {
+      file.delete();
+    }
+  }
+
+  /**
+   * Method to test that a payload filling the picture comes back at
+   * each depth, that more depth holds more bytes, and that only the low
+   * depth bits of each color are changed
+   */
+  public static void testBytesAtEachDepth()
+  {
+    Picture source = RawImageFileTest.makePicture(64,48,false);
+    int lastCapacity = 0;
+    for (int depth = LowBits.MIN_DEPTH; depth <= LowBits.MAX_DEPTH; depth++)
+    {
+      int capacity = Steganography.getByteCapacity(source,depth);
+      check(capacity > lastCapacity,"depth " + depth + " doesn't hold more bytes");
+      lastCapacity = capacity;
+      byte[] data = new byte[capacity];
+      new Random(depth).nextBytes(data);
+      Picture hidden = Steganography.hideBytes(source,data,depth);
+      check(Arrays.equals(Steganography.revealBytes(hidden),data),
+            "the bytes changed at depth " + depth);
+      // the header always uses 2 bits (see StegoOutputStream)
+      int headerHigh = colorMask((0xff << Math.max(depth,2)) & 0xff);
+      int high = colorMask((0xff << depth) & 0xff);
+      int width = source.getWidth();
+      for (int y = 0; y < source.getHeight(); y++)
+        for (int x = 0; x < width; x++)
+          check(((hidden.getBasicPixel(x,y) ^ source.getBasicPixel(x,y)) &
+                 (y * width + x < StegoOutputStream.HEADER_PIXELS ? headerHigh : high)) == 0,
+                "a high bit changed at depth " + depth);
+    }
+  }
+
+  /**
+   * Method to test that depths outside of 1 to 4 aren't used
+   */
+  public static void testBadDepth()
+  {
+    Picture source = new Picture(20,20);
+    for (int depth : new int[] {LowBits.MIN_DEPTH - 1, LowBits.MAX_DEPTH + 1})
+    {
+      try
+      {
+        Steganography.hideBytes(source,new byte[1],depth);
+        check(false,"depth " + depth + " was used");
+      }
+      catch (IllegalArgumentException ex)
+      {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Method to test that a hidden picture comes back with its top depth
+   * bits and its own size at each depth, without being told the depth
+   */
+  public static void testPictureAtEachDepth()
+  {
+    Picture source = RawImageFileTest.makePicture(90,70,false);
+    Picture secret = RawImageFileTest.makePicture(60,50,false);
+    for (int depth = LowBits.MIN_DEPTH; depth <= LowBits.MAX_DEPTH; depth++)
+    {
+      Picture revealed = Steganography.revealPicture(
+        Steganography.hidePicture(source,secret,depth));
+      check(revealed.getWidth() == 60 && revealed.getHeight() == 50,
+            "the size wasn't kept at depth " + depth);
+      int high = colorMask((0xff << (8 - depth)) & 0xff);
+      // the header is where the first pixels of row 0 were
+      for (int y = 1; y < 50; y++)
+        for (int x = 0; x < 60; x++)
+          check(((revealed.getBasicPixel(x,y) ^ secret.getBasicPixel(x,y)) & high) == 0,
+                "pixel " + x + "," + y + " is wrong at depth " + depth);
+    }
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws IOException if a test file can't be made
+   */
+  public static void main(String[] args) throws IOException
+  {
+    testTextRoundTrip();
+    System.out.println("testTextRoundTrip passed");
+    testTextTooLong();
+    System.out.println("testTextTooLong passed");
+    testTextFromFile();
+    System.out.println("testTextFromFile passed");
+    testBytesAtEachDepth();
+    System.out.println("testBytesAtEachDepth passed");
+    testBadDepth();
+    System.out.println("testBadDepth passed");
+    testPictureAtEachDepth();
+    System.out.println("testPictureAtEachDepth passed");
+  }
+
+}
@@ -0,0 +1,380 @@
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Class that reads back the bytes hidden in a picture by a
+ * StegoOutputStream.  The header is read when the stream is created
+ * and the rest of the payload is read from the pixels a chunk at a
+ * time as it is asked for.  The stream can also read one shard of a
+ * payload that was split over several pictures.
+ */
+public class StegoInputStream extends InputStream
+{
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the picture the bytes are hidden in */
+  private DigitalPicture picture;
+
+  /** the number of bits hidden in each color */
+  private int depth;
+
+  /** the number of payload bytes */
+  private long length;
+
+  /** the id, sequence number, and shard count of a shard (null if this
+   * isn't a shard) */
+  private int[] shard;
+
+  /** the number of payload bytes returned so far */
+  private long position;
+
+  /** the number of payload bytes read from the picture so far */
+  private long decoded;
+
+  /** a chunk of payload bytes read from the picture */
+  private byte[] buffer = new byte[StegoOutputStream.CHUNK_BYTES];
+
+  /** the index of the next byte to return from the buffer */
+  private int bufferPosition;
+
+  /** the number of bytes in the buffer */
+  private int bufferCount;
+
+  /** the codes for a chunk of bytes */
+  private int[] codes;
+
+  /** a buffer for part of a row of pixels */
+  private int[] pixels;
+
+  /** the index (in row-major order) of the next pixel to read */
+  private long nextPixel;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the picture to read from
+   * @param picture the picture with the hidden bytes
+   * @throws IOException if the picture doesn't have a hidden payload
+   */
+  public StegoInputStream(DigitalPicture picture) throws IOException
+  {
+    this.picture = picture;
+    this.pixels = new int[picture.getWidth()];
+    byte[] header = readHeader(picture,pixels);
+    this.length = getPayloadLength(picture,header);
+    this.nextPixel = StegoOutputStream.HEADER_PIXELS;
+    if (length < 0)
+    {
+      header = readShardHeader(picture,pixels);
+      this.length = getShardLength(picture,header);
+      if (length < 0)
+        throw new IOException("no hidden payload found in " + picture);
+      int hb = StegoOutputStream.HEADER_BYTES;
+      this.shard = new int[3];
+      for (int i = 0; i < 4; i++)
+        shard[0] = (shard[0] << 8) | (header[hb + i] & 0xff);
+      for (int i = 1; i < shard.length; i++)
+        shard[i] = ((header[hb + 2 * i + 2] & 0xff) << 8) |
+                   (header[hb + 2 * i + 3] & 0xff);
+      this.nextPixel = StegoOutputStream.SHARD_HEADER_PIXELS;
+    }
+    this.depth = (header[1] & 0xf0) >> 4;
+    if (depth == 0)
+      depth = LowBits.DEFAULT_DEPTH;
+    this.codes = new int[LowBits.codesFor(StegoOutputStream.CHUNK_BYTES,depth)];
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to tell if a picture has a payload hidden by a
+   * StegoOutputStream
+   * @param picture the picture to check
+   * @return true if the picture has a valid payload header
+   */
+  public static boolean hasPayload(DigitalPicture picture)
+  {
+    byte[] header = readHeader(picture,new int[picture.getWidth()]);
+    return getPayloadLength(picture,header) >= 0;
+  }
+
+  /**
+   * Method to get the number of pixels (in row-major order from the top
+   * left) that hold a byte payload, from its header.  This lets a
+   * reader load only the first rows of a big picture file.
+   * @param header the HEADER_BYTES header bytes (can be null)
+   * @param width the width of the whole picture
+   * @param height the height of the whole picture
+   * @return the number of pixels used by the header and payload, or -1
+   * if there is no valid header
+   */
+  static long getPayloadPixels(byte[] header, int width, int height)
+  {
+    int depth = getDepth(header);
+    if (depth < 0)
+      return -1;
+    long length = getLength(header);
+    if (length > StegoOutputStream.getCapacity(width,height,depth,
+                                               StegoOutputStream.HEADER_PIXELS))
+      return -1;
+    return StegoOutputStream.HEADER_PIXELS + LowBits.codesFor(length,depth);
+  }
+
+  /**
+   * Method to get the number of bytes in the payload
+   * @return the payload length
+   */
+  public long getLength() { return length; }
+
+  /**
+   * Method to get the number of bits hidden in each color
+   * @return the depth recorded in the header
+   */
+  public int getDepth() { return depth; }
+
+  /**
+   * Method to tell if the payload is one shard of a bigger payload
+   * @return true if this is a shard
+   */
+  public boolean isShard() { return shard != null; }
+
+  /**
+   * Method to get the id shared by all the shards of a payload
+   * @return the payload id (0 if this isn't a shard)
+   */
+  public int getPayloadId() { return (shard == null) ? 0 : shard[0]; }
+
+  /**
+   * Method to get the index of this shard
+   * @return the sequence number (0 if this isn't a shard)
+   */
+  public int getSequence() { return (shard == null) ? 0 : shard[1]; }
+
+  /**
+   * Method to get the number of shards the payload was split into
+   * @return the shard count (1 if this isn't a shard)
+   */
+  public int getTotal() { return (shard == null) ? 1 : shard[2]; }
+
+  /**
+   * Method to read one byte
+   * @return the byte (0 to 255) or -1 at the end of the payload
+   */
+  public int read()
+  {
+    if (bufferPosition == bufferCount && !fillBuffer())
+      return -1;
+    position++;
+    return buffer[bufferPosition++] & 0xff;
+  }
+
+  /**
+   * Method to read bytes into part of an array
+   * @param b the array to read into
+   * @param off the index to put the first byte at
+   * @param len the most bytes to read
+   * @return the number of bytes read or -1 at the end of the payload
+   */
+  public int read(byte[] b, int off, int len)
+  {
+    if (off < 0 || len < 0 || off + len > b.length)
+      throw new IndexOutOfBoundsException();
+    if (len == 0)
+      return 0;
+    int total = 0;
+    while (total < len)
+    {
+      if (bufferPosition == bufferCount && !fillBuffer())
+        break;
+      int n = Math.min(len - total, bufferCount - bufferPosition);
+      System.arraycopy(buffer,bufferPosition,b,off + total,n);
+      bufferPosition += n;
+      total += n;
+    }
+    position += total;
+    return (total == 0) ? -1 : total;
+  }
+
+  /**
+   * Method to get the number of bytes left in the payload
+   * @return the number of bytes that can still be read
+   */
+  public int available()
+  {
+    return (int) Math.min(Integer.MAX_VALUE, length - position);
+  }
+
+  /**
+   * Method to read the next chunk of the payload into the buffer
+   * @return false if the whole payload has been read
+   */
+  private boolean fillBuffer()
+  {
+    int count = (int) Math.min(buffer.length, length - decoded);
+    if (count <= 0)
+      return false;
+    int n = LowBits.codesFor(count,depth);
+    readCodes(picture,nextPixel,codes,n,pixels,depth);
+    LowBits.codesToBytes(codes,0,buffer,0,count,depth);
+    nextPixel += n;
+    decoded += count;
+    bufferPosition = 0;
+    bufferCount = count;
+    return true;
+  }
+
+  /**
+   * Method to read the header bytes from the first pixels of a picture
+   * @param picture the picture to read from
+   * @param pixels a buffer at least as long as a row
+   * @return the HEADER_BYTES header bytes, or null if the picture is
+   * too small to hold a header
+   */
+  static byte[] readHeader(DigitalPicture picture, int[] pixels)
+  {
+    return readHeader(picture,pixels,StegoOutputStream.HEADER_BYTES);
+  }
+
+  /**
+   * Method to read the shard header bytes from the first pixels of a
+   * picture
+   * @param picture the picture to read from
+   * @param pixels a buffer at least as long as a row
+   * @return the SHARD_HEADER_BYTES header bytes, or null if the picture
+   * is too small to hold a shard header
+   */
+  private static byte[] readShardHeader(DigitalPicture picture, int[] pixels)
+  {
+    return readHeader(picture,pixels,StegoOutputStream.SHARD_HEADER_BYTES);
+  }
+
+  /**
+   * Method to read some header bytes from the first pixels of a picture
+   * @param picture the picture to read from
+   * @param pixels a buffer at least as long as a row
+   * @param headerBytes the number of bytes to read
+   * @return the header bytes, or null if the picture is too small
+   */
+  private static byte[] readHeader(DigitalPicture picture, int[] pixels,
+                                   int headerBytes)
+  {
+    int headerPixels = LowBits.codesFor(headerBytes);
+    long pixelCount = (long) picture.getWidth() * picture.getHeight();
+    if (pixelCount < headerPixels)
+      return null;
+
+    int[] codes = new int[headerPixels];
+    byte[] header = new byte[headerBytes];
+    readCodes(picture,0,codes,headerPixels,pixels,LowBits.DEFAULT_DEPTH);
+    LowBits.codesToBytes(codes,0,header,0,header.length);
+    return header;
+  }
+
+  /**
+   * Method to check a header for a format and get its depth
+   * @param header the header bytes (can be null)
+   * @param format the format to look for
+   * @return the depth, or -1 if the header isn't for that format
+   */
+  static int getDepth(byte[] header, int format)
+  {
+    if (header == null || (header[0] & 0xff) != StegoOutputStream.MAGIC ||
+        (header[1] & 0x0f) != format)
+      return -1;
+    int depth = (header[1] & 0xf0) >> 4;
+
+    // carriers from before the depth was recorded have 0 here
+    if (depth == 0)
+      return LowBits.DEFAULT_DEPTH;
+    if (depth > LowBits.MAX_DEPTH)
+      return -1;
+    return depth;
+  }
+
+  /**
+   * Method to get the depth from a byte payload header
+   * @param header the header bytes
+   * @return the depth, or -1 if there is no valid header
+   */
+  private static int getDepth(byte[] header)
+  {
+    return getDepth(header,StegoOutputStream.FORMAT_BYTES);
+  }
+
+  /**
+   * Method to get the payload length from a byte payload header
+   * @param picture the picture the header was read from
+   * @param header the header bytes (can be null)
+   * @return the payload length, or -1 if there is no valid header
+   */
+  private static long getPayloadLength(DigitalPicture picture, byte[] header)
+  {
+    int depth = getDepth(header);
+    if (depth < 0)
+      return -1;
+    long length = getLength(header);
+    if (length > StegoOutputStream.getCapacity(picture,depth))
+      return -1;
+    return length;
+  }
+
+  /**
+   * Method to get the shard length from a shard header
+   * @param picture the picture the header was read from
+   * @param header the shard header bytes (can be null)
+   * @return the shard length, or -1 if there is no valid shard header
+   */
+  private static long getShardLength(DigitalPicture picture, byte[] header)
+  {
+    int depth = getDepth(header,StegoOutputStream.FORMAT_SHARD);
+    if (depth < 0)
+      return -1;
+    int hb = StegoOutputStream.HEADER_BYTES;
+    int sequence = ((header[hb + 4] & 0xff) << 8) | (header[hb + 5] & 0xff);
+    int total = ((header[hb + 6] & 0xff) << 8) | (header[hb + 7] & 0xff);
+    long length = getLength(header);
+    if (total == 0 || sequence >= total ||
+        length > StegoOutputStream.getShardCapacity(picture,depth))
+      return -1;
+    return length;
+  }
+
+  /**
+   * Method to get the 4 byte big-endian length from a header
+   * @param header the header bytes
+   * @return the length
+   */
+  private static long getLength(byte[] header)
+  {
+    return ((header[2] & 0xffL) << 24) | ((header[3] & 0xff) << 16) |
+           ((header[4] & 0xff) << 8) | (header[5] & 0xff);
+  }
+
+  /**
+   * Method to read the codes hidden in a run of pixels in row-major
+   * order
+   * @param picture the picture to read from
+   * @param firstPixel the row-major index of the first pixel
+   * @param codes the array to put the codes in
+   * @param n the number of codes to read
+   * @param pixels a buffer at least as long as a row
+   * @param depth the number of bits hidden in each color
+   */
+  static void readCodes(DigitalPicture picture, long firstPixel,
+                        int[] codes, int n, int[] pixels, int depth)
+  {
+    int width = picture.getWidth();
+    for (int i = 0; i < n; )
+    {
+      long pixel = firstPixel + i;
+      int row = (int) (pixel / width);
+      int col = (int) (pixel % width);
+      int cols = Math.min(width - col, n - i);
+      picture.getBasicPixels(col,row,cols,1,pixels);
+      LowBits.getCodes(pixels,0,cols,codes,i,depth);
+      i += cols;
+    }
+  }
+
+}
@@ -0,0 +1,435 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Class that hides the bytes written to it in the low bits of a
+ * picture.  By default 6 bits go in each pixel (2 in each of red,
+ * green, and blue), but any depth from 1 to 4 bits per color can be
+ * used.  The bytes are hidden as they arrive, a chunk at a time, so a large
+ * payload never has to be in memory all at once.  The picture is
+ * changed in place, so make a copy first if you want to keep the
+ * original.  A SimplePicture is marked as a carrier, so that it won't
+ * be written in a lossy format.
+ *
+ * The hidden payload starts with a header: MAGIC, the format (with the
+ * depth in the high 4 bits), and the payload length as a 4 byte
+ * big-endian int.  The header always uses a depth of 2 so that it can
+ * be found before the depth is known.  The length isn't known until
+ * the end, so the header is written when the stream is closed.
+ * Use a StegoInputStream to read the payload back.
+ *
+ * A payload too big for one picture can be split into shards, one per
+ * picture.  A shard has a longer header that also holds an id for the
+ * whole payload, the shard's sequence number, and the number of shards,
+ * so the shards can be put back together in any order.
+ */
+public class StegoOutputStream extends OutputStream
+{
+
+  /////////////////////////// format ///////////////////////////////////
+
+  /**
+   * the first header byte.  Its first 6 bit code is 55, which can't
+   * start a message in the old 27-symbol text format (codes 0-27).
+   */
+  static final int MAGIC = 0xB7;
+
+  /** the format byte for a plain byte payload */
+  static final int FORMAT_BYTES = 1;
+
+  /** the format byte for a picture hidden by Steganography.hidePicture */
+  static final int FORMAT_PICTURE = 2;
+
+  /** the format byte for one shard of a payload split over pictures */
+  static final int FORMAT_SHARD = 3;
+
+  /** the number of bytes in the header */
+  static final int HEADER_BYTES = 6;
+
+  /** the number of pixels the header is hidden in */
+  static final int HEADER_PIXELS = LowBits.codesFor(HEADER_BYTES);
+
+  /** the number of bytes in a shard header (the header plus a 4 byte
+   * payload id and a 2 byte sequence number and shard count) */
+  static final int SHARD_HEADER_BYTES = HEADER_BYTES + 8;
+
+  /** the number of pixels a shard header is hidden in */
+  static final int SHARD_HEADER_PIXELS = LowBits.codesFor(SHARD_HEADER_BYTES);
+
+  /** the most shards a payload can be split into */
+  public static final int MAX_SHARDS = 0xffff;
+
+  /** the number of bytes hidden at a time (a multiple of 9 so that
+   * each chunk fills whole pixels at every depth) */
+  static final int CHUNK_BYTES = 9 * 1024;
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the picture to hide the bytes in */
+  private DigitalPicture picture;
+
+  /** the number of bits hidden in each color */
+  private int depth;
+
+  /** the most payload bytes the picture can hold */
+  private long capacity;
+
+  /** the id, sequence number, and shard count of a shard (null if this
+   * isn't a shard) */
+  private int[] shard;
+
+  /** the bytes waiting to be hidden */
+  private byte[] buffer = new byte[CHUNK_BYTES];
+
+  /** the number of bytes in the buffer */
+  private int count;
+
+  /** the codes for a chunk of bytes */
+  private int[] codes;
+
+  /** a buffer for part of a row of pixels */
+  private int[] pixels;
+
+  /** the index (in row-major order) of the next pixel to hide data in */
+  private long nextPixel;
+
+  /** the number of payload bytes written so far */
+  private long length;
+
+  /** true once the stream has been closed */
+  private boolean closed;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the picture to hide the bytes in
+   * @param picture the picture to change
+   */
+  public StegoOutputStream(DigitalPicture picture)
+  {
+    this(picture,LowBits.DEFAULT_DEPTH);
+  }
+
+  /**
+   * A constructor that takes the picture to hide the bytes in and the
+   * number of bits to hide in each color
+   * @param picture the picture to change
+   * @param depth the number of low bits to use in each color (1 to 4)
+   */
+  public StegoOutputStream(DigitalPicture picture, int depth)
+  {
+    LowBits.checkDepth(depth);
+    this.picture = picture;
+    this.depth = depth;
+    if (picture instanceof SimplePicture)
+      ((SimplePicture) picture).setCarrier(true);
+    this.capacity = getCapacity(picture,depth);
+    checkHeaderFits(picture);
+    this.codes = new int[LowBits.codesFor(CHUNK_BYTES,depth)];
+    this.pixels = new int[picture.getWidth()];
+    this.nextPixel = HEADER_PIXELS;
+  }
+
+  /**
+   * A constructor for a stream that hides one shard of a payload that
+   * is split over several pictures
+   * @param picture the picture to change
+   * @param depth the number of low bits to use in each color (1 to 4)
+   * @param payloadId an id shared by all the shards of the payload
+   * @param sequence the index of this shard (0 to total - 1)
+   * @param total the number of shards (1 to MAX_SHARDS)
+   */
+  public StegoOutputStream(DigitalPicture picture, int depth,
+                           int payloadId, int sequence, int total)
+  {
+    this(picture,depth);
+    if (total < 1 || total > MAX_SHARDS || sequence < 0 || sequence >= total)
+      throw new IllegalArgumentException("bad shard " + sequence +
+                                         " of " + total);
+    this.shard = new int[] {payloadId, sequence, total};
+    this.capacity = getShardCapacity(picture,depth);
+    checkHeaderFits(picture);
+    this.nextPixel = SHARD_HEADER_PIXELS;
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to check that the header fits in the picture
+   * @param picture the picture to hide the bytes in
+   */
+  private void checkHeaderFits(DigitalPicture picture)
+  {
+    if (capacity < 0)
+      throw new IllegalArgumentException("a " + picture.getWidth() + "x" +
+                                         picture.getHeight() +
+                                         " picture is too small to hold a header");
+  }
+
+  /**
+   * Method to get the number of payload bytes a picture can hold
+   * @param picture the picture to check
+   * @return the most bytes that can be written to a stream on it, or
+   * -1 if the picture is too small to hold the header
+   */
+  public static long getCapacity(DigitalPicture picture)
+  {
+    return getCapacity(picture,LowBits.DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to get the number of payload bytes a picture can hold at a
+   * depth
+   * @param picture the picture to check
+   * @param depth the number of low bits to use in each color (1 to 4)
+   * @return the most bytes that can be written to a stream on it, or
+   * -1 if the picture is too small to hold the header
+   */
+  public static long getCapacity(DigitalPicture picture, int depth)
+  {
+    return getCapacity(picture,depth,HEADER_PIXELS);
+  }
+
+  /**
+   * Method to get the number of payload bytes one shard can hold
+   * @param picture the picture to check
+   * @param depth the number of low bits to use in each color (1 to 4)
+   * @return the most bytes that can be written to a shard stream on it,
+   * or -1 if the picture is too small to hold the shard header
+   */
+  public static long getShardCapacity(DigitalPicture picture, int depth)
+  {
+    return getCapacity(picture,depth,SHARD_HEADER_PIXELS);
+  }
+
+  /**
+   * Method to get the number of payload bytes a picture file can hold
+   * at a depth, without loading the file
+   * @param info the information from the file's header
+   * @param depth the number of low bits to use in each color (1 to 4)
+   * @return the most bytes that can be written to a stream on it, or
+   * -1 if the picture is too small to hold the header
+   */
+  public static long getCapacity(ImageInfo info, int depth)
+  {
+    return getCapacity(info.getWidth(),info.getHeight(),depth,HEADER_PIXELS);
+  }
+
+  /**
+   * Method to get the number of bytes that fit after a header
+   * @param picture the picture to check
+   * @param depth the number of low bits to use in each color
+   * @param headerPixels the number of pixels used by the header
+   * @return the most payload bytes, or -1 if the header doesn't fit
+   */
+  static long getCapacity(DigitalPicture picture, int depth,
+                          int headerPixels)
+  {
+    return getCapacity(picture.getWidth(),picture.getHeight(),depth,headerPixels);
+  }
+
+  /**
+   * Method to get the number of bytes that fit after a header in a
+   * picture of a size
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param depth the number of low bits to use in each color
+   * @param headerPixels the number of pixels used by the header
+   * @return the most payload bytes, or -1 if the picture is too small
+   * to hold the header
+   */
+  static long getCapacity(int width, int height, int depth, int headerPixels)
+  {
+    LowBits.checkDepth(depth);
+    long pixelCount = (long) width * height;
+    if (pixelCount < headerPixels)
+      return -1;
+    long bits = (pixelCount - headerPixels) * 3 * depth;
+    return Math.min(Integer.MAX_VALUE, bits / 8);
+  }
+
+  /**
+   * Method to get the number of bits hidden in each color
+   * @return the depth
+   */
+  public int getDepth() { return depth; }
+
+  /**
+   * Method to get the number of bytes written so far
+   * @return the number of payload bytes
+   */
+  public long getLength() { return length; }
+
+  /**
+   * Method to write one byte
+   * @param b the byte to write (the low 8 bits)
+   * @throws IOException if the picture is full or the stream is closed
+   */
+  public void write(int b) throws IOException
+  {
+    checkRoom(1);
+    buffer[count++] = (byte) b;
+    length++;
+    if (count == buffer.length)
+      hideBuffer();
+  }
+
+  /**
+   * Method to write part of an array of bytes
+   * @param b the bytes to write
+   * @param off the index of the first byte to write
+   * @param len the number of bytes to write
+   * @throws IOException if the picture is full or the stream is closed
+   */
+  public void write(byte[] b, int off, int len) throws IOException
+  {
+    if (off < 0 || len < 0 || off + len > b.length)
+      throw new IndexOutOfBoundsException();
+    checkRoom(len);
+    while (len > 0)
+    {
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b,off,buffer,count,n);
+      count += n;
+      length += n;
+      off += n;
+      len -= n;
+      if (count == buffer.length)
+        hideBuffer();
+    }
+  }
+
+  /**
+   * Method to hide any buffered bytes and then the header.  The
+   * payload can't be read back until this is done.
+   * @throws IOException not thrown by this class
+   */
+  public void close() throws IOException
+  {
+    if (closed)
+      return;
+    hideBuffer();
+
+    byte[] header;
+    if (shard == null)
+      header = createHeader(FORMAT_BYTES,depth,length,HEADER_BYTES);
+    else
+    {
+      header = createHeader(FORMAT_SHARD,depth,length,SHARD_HEADER_BYTES);
+      for (int i = 0; i < 4; i++)
+        header[HEADER_BYTES + i] = (byte) (shard[0] >>> (24 - 8 * i));
+      for (int i = 1; i < shard.length; i++)
+      {
+        header[HEADER_BYTES + 2 * i + 2] = (byte) (shard[i] >> 8);
+        header[HEADER_BYTES + 2 * i + 3] = (byte) shard[i];
+      }
+    }
+    writeHeader(picture,header,pixels);
+    closed = true;
+  }
+
+  /**
+   * Method to make a header with the magic number, format, depth, and
+   * length filled in
+   * @param format the payload format (like FORMAT_BYTES)
+   * @param depth the number of low bits used in each color
+   * @param length the number of payload bytes
+   * @param headerBytes the size of the header (at least HEADER_BYTES)
+   * @return the header bytes
+   */
+  static byte[] createHeader(int format, int depth, long length, int headerBytes)
+  {
+    byte[] header = new byte[headerBytes];
+    header[0] = (byte) MAGIC;
+    header[1] = (byte) (format | (depth << 4));
+    for (int i = 0; i < 4; i++)
+      header[2 + i] = (byte) (length >>> (24 - 8 * i));
+    return header;
+  }
+
+  /**
+   * Method to hide a header in the first pixels of a picture
+   * @param picture the picture to change
+   * @param header the header bytes
+   * @param pixels a buffer at least as long as a row
+   */
+  static void writeHeader(DigitalPicture picture, byte[] header, int[] pixels)
+  {
+    int n = LowBits.codesFor(header.length);
+    int[] codes = new int[n];
+    LowBits.bytesToCodes(header,0,header.length,codes,0);
+    writeCodes(picture,0,codes,n,pixels,LowBits.DEFAULT_DEPTH);
+  }
+
+  /**
+   * Method to make sure there is room for more bytes
+   * @param len the number of bytes about to be written
+   * @throws IOException if they won't fit or the stream is closed
+   */
+  private void checkRoom(int len) throws IOException
+  {
+    if (closed)
+      throw new IOException("stream is closed");
+    if (length + len > capacity)
+      throw new IOException("picture can only hold " + capacity +
+                            " bytes, not " + (length + len));
+  }
+
+  /**
+   * Method to hide the buffered bytes in the next pixels
+   */
+  private void hideBuffer()
+  {
+    if (count == 0)
+      return;
+    int n = LowBits.codesFor(count,depth);
+    LowBits.bytesToCodes(buffer,0,count,codes,0,depth);
+    writeCodes(picture,nextPixel,codes,n,pixels,depth);
+    nextPixel += n;
+    count = 0;
+  }
+
+  /**
+   * Method to hide codes in a run of pixels in row-major order
+   * @param picture the picture to change
+   * @param firstPixel the row-major index of the first pixel
+   * @param codes the codes to hide (3 * depth bits each)
+   * @param n the number of codes to hide
+   * @param pixels a buffer at least as long as a row
+   * @param depth the number of bits to hide in each color
+   */
+  static void writeCodes(DigitalPicture picture, long firstPixel,
+                         int[] codes, int n, int[] pixels, int depth)
+  {
+    writeCodes(picture,firstPixel,codes,0,n,pixels,depth);
+  }
+
+  /**
+   * Method to hide codes from part of an array in a run of pixels in
+   * row-major order
+   * @param picture the picture to change
+   * @param firstPixel the row-major index of the first pixel
+   * @param codes the codes to hide (3 * depth bits each)
+   * @param codesFrom the index in codes of the first code to hide
+   * @param n the number of codes to hide
+   * @param pixels a buffer at least as long as a row
+   * @param depth the number of bits to hide in each color
+   */
+  static void writeCodes(DigitalPicture picture, long firstPixel, int[] codes,
+                         int codesFrom, int n, int[] pixels, int depth)
+  {
+    int width = picture.getWidth();
+    for (int i = 0; i < n; )
+    {
+      long pixel = firstPixel + i;
+      int row = (int) (pixel / width);
+      int col = (int) (pixel % width);
+      int cols = Math.min(width - col, n - i);
+      picture.getBasicPixels(col,row,cols,1,pixels);
+      LowBits.setCodes(pixels,0,cols,codes,codesFrom + i,depth);
+      picture.setBasicPixels(col,row,cols,1,pixels);
+      i += cols;
+    }
+  }
+
+}
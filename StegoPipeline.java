@@ -0,0 +1,177 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Class that changes a picture file into a new file a band of rows at
+ * a time, so that pictures too big to fit in memory can be used as
+ * carriers.  Each band is read from the source file (see
+ * SimplePicture.loadOrFail with a region), changed by a BandKernel, and
+ * handed to the encoder for the target file through a BandedImage.
+ * Only about one band is in memory at a time.
+ *
+ * The target must be in a lossless format (png, bmp, tif, or praw).
+ * Raw (praw) sources are mapped, so each band is read right from the
+ * file.  ImageIO readers are asked for one band at a time, and for
+ * compressed formats like png and jpg that means scanning the file
+ * from the top for each band, so use tall bands (or a raw source) for
+ * big files.
+ */
+public class StegoPipeline
+{
+
+  /////////////////////////// inner types ///////////////////////////////
+
+  /**
+   * Interface for the change made to each band
+   */
+  public interface BandKernel
+  {
+    /**
+     * Method to change the pixels of one band
+     * @param band a picture holding the rows of the band
+     * @param startRow the row in the whole picture of the band's row 0
+     * @throws IOException if something the kernel needs can't be read
+     */
+    public void apply(Picture band, int startRow) throws IOException;
+  }
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the number of rows in a band when none is given */
+  public static final int DEFAULT_BAND_ROWS = 256;
+
+  /** the file the bands are read from */
+  private File source;
+
+  /** the width of the source picture */
+  private int width;
+
+  /** the height of the source picture */
+  private int height;
+
+  /** the number of rows in each band (the last band can be smaller) */
+  private int bandRows;
+
+  /** true if the bands have alpha */
+  private boolean alpha;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that takes the source file and the band height.  The
+   * size of the source is read from its header.
+   * @param sourceFile the name of the file to read the bands from
+   * @param bandRows the number of rows in each band
+   * @throws IOException if the source can't be read
+   */
+  public StegoPipeline(String sourceFile, int bandRows) throws IOException
+  {
+    if (bandRows < 1)
+      throw new IllegalArgumentException("a band must have at least 1 row, not " + bandRows);
+    ImageInfo info = ImageInfo.probe(sourceFile);
+    this.source = info.getFile();
+    this.width = info.getWidth();
+    this.height = info.getHeight();
+    this.bandRows = Math.min(bandRows,height);
+
+    // the first row tells if the bands need alpha
+    this.alpha = readRows(source.getPath(),width,0,1).hasAlpha();
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to get the width of the source picture
+   * @return the width in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the source picture
+   * @return the height in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to get the number of rows in each band
+   * @return the band height
+   */
+  public int getBandRows() { return bandRows; }
+
+  /**
+   * Method to read rows of a picture file, in whatever image type the
+   * reader makes
+   * @param fileName the file to read
+   * @param width the width of the picture in the file
+   * @param startRow the first row to read
+   * @param endRow one past the last row to read
+   * @return a picture holding just those rows
+   * @throws IOException if the file can't be read
+   */
+  public static Picture readRows(String fileName, int width, int startRow, int endRow)
+    throws IOException
+  {
+    Picture rows = new Picture(1,1);
+    rows.loadOrFail(fileName,new Rectangle(0,startRow,width,endRow - startRow),1,1);
+    return rows;
+  }
+
+  /**
+   * Method to read one band from the source as an int packed picture
+   * @param startRow the first row of the band
+   * @return the band
+   * @throws IOException if the source can't be read
+   */
+  private Picture readBand(int startRow) throws IOException
+  {
+    int rows = Math.min(bandRows,height - startRow);
+    Picture read = readRows(source.getPath(),width,startRow,startRow + rows);
+    if (read.getRasterData() != null && read.hasAlpha() == alpha)
+      return read;
+    Picture band = new Picture(new BufferedImage(width,rows,alpha ? BufferedImage.TYPE_INT_ARGB
+                                                                 : BufferedImage.TYPE_INT_RGB));
+    band.setBasicPixels(0,0,width,rows,read.getBasicPixels(0,0,width,rows,null));
+    return band;
+  }
+
+  /**
+   * Method to change the source a band at a time and write the result
+   * to the target file
+   * @param targetFile the name of the file to write (its extension
+   * picks the format, which must be lossless)
+   * @param kernel the change to make to each band
+   * @throws IOException if a file can't be read or written
+   */
+  public void run(String targetFile, BandKernel kernel) throws IOException
+  {
+    File target = new File(targetFile);
+    String name = target.getName();
+    int posDot = name.lastIndexOf('.');
+    String extension = (posDot >= 0) ? name.substring(posDot + 1) : null;
+    if (!PngWriter.isLossless(extension))
+      throw new IOException(targetFile + " is not in a lossless format," +
+                            " which would lose the payload");
+    if (target.exists() && target.getCanonicalPath().equals(source.getCanonicalPath()))
+      throw new IOException(targetFile + " is the source file");
+
+    BandedImage image = new BandedImage(width,height,bandRows,alpha,(startRow, rows) -> {
+      Picture band = readBand(startRow);
+      kernel.apply(band,startRow);
+      return band;
+    });
+    image.write(target);
+  }
+
+  /**
+   * Method to return a string with information about this pipeline
+   * @return a string with the source, size, and band height
+   */
+  public String toString()
+  {
+    return "StegoPipeline source " + source + " width " + width + " height " +
+      height + " band rows " + bandRows;
+  }
+
+}
@@ -0,0 +1,88 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Class that tests hiding pictures file to file a band at a time (see
+ * StegoPipeline).  Run it like any other class:
+ * <pre>
+ *   java StegoPipelineTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.  The files are made in
+ * a new temporary directory that is deleted at the end.
+ */
+public class StegoPipelineTest
+{
+
+  /** the directory the test files are made in */
+  private static File dir;
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to get the path of a test file
+   * @param name the name of the file
+   * @return the path in the test directory
+   */
+  private static String path(String name)
+  {
+    return new File(dir,name).getPath();
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that hiding a picture file to file over several
+   * bands gives the same picture as hiding it in memory, at each depth
+   * @throws IOException if a test file can't be written or read
+   */
+  public static void testSameAsInMemory() throws IOException
+  {
+    Picture source = RawImageFileTest.makePicture(300,600,false);
+    Picture secret = RawImageFileTest.makePicture(250,520,false);
+    source.writeOrFail(path("source.praw"));
+    secret.writeOrFail(path("secret.png"));
+    for (int depth = 1; depth <= 4; depth++)
+    {
+      String target = path("target" + depth + ".png");
+      Steganography.hidePicture(path("source.praw"),path("secret.png"),target,depth);
+      Picture expected = Steganography.hidePicture(source,secret,depth);
+      check(RawImageFileTest.samePixels(new Picture(target),expected),
+            "the file differs from the picture at depth " + depth);
+    }
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws IOException if a test file can't be made
+   */
+  public static void main(String[] args) throws IOException
+  {
+    dir = Files.createTempDirectory("pipeline").toFile();
+    try
+    {
+      testSameAsInMemory();
+      System.out.println("testSameAsInMemory passed");
+    }
+    finally
+    {
+      for (File file : dir.listFiles())
+        file.delete();
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class that tests hiding bytes with a StegoOutputStream and reading
+ * them back with a StegoInputStream.  Run it like any other class:
+ * <pre>
+ *   java StegoStreamTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.
+ */
+public class StegoStreamTest
+{
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that bytes written one at a time and in runs that
+   * cross chunk boundaries read back the same, one at a time and in
+   * runs of other sizes
+   * @throws IOException if the picture can't hold the bytes
+   */
+  public static void testRoundTrip() throws IOException
+  {
+    Picture picture = RawImageFileTest.makePicture(200,150,false);
+    byte[] data = new byte[StegoOutputStream.CHUNK_BYTES * 2 + 123];
+    new Random(8).nextBytes(data);
+    StegoOutputStream out = new StegoOutputStream(picture,3);
+    out.write(data[0]);
+    out.write(data,1,StegoOutputStream.CHUNK_BYTES);
+    out.write(data[StegoOutputStream.CHUNK_BYTES + 1]);
+    out.write(data,StegoOutputStream.CHUNK_BYTES + 2,data.length - StegoOutputStream.CHUNK_BYTES - 2);
+    check(out.getLength() == data.length,"the stream counted the wrong length");
+    check(!StegoInputStream.hasPayload(picture),"the payload could be read before close");
+    out.close();
+    check(picture.isCarrier(),"the picture wasn't marked as a carrier");
+
+    StegoInputStream in = new StegoInputStream(picture);
+    check(in.getDepth() == 3 && in.getLength() == data.length && !in.isShard(),
+          "the header is wrong");
+    check(in.available() == data.length,"available is wrong at the start");
+    byte[] read = new byte[data.length];
+    read[0] = (byte) in.read();
+    int pos = 1;
+    while (pos < read.length)
+    {
+      int n = in.read(read,pos,Math.min(1000,read.length - pos));
+      check(n > 0,"the payload ended early");
+      pos += n;
+    }
+    check(in.read() == -1 && in.read(read,0,1) == -1 && in.available() == 0,
+          "the stream didn't end with the payload");
+    check(Arrays.equals(read,data),"the bytes changed");
+    in.close();
+  }
+
+  /**
+   * Method to test that writing more than the picture holds fails and
+   * that what fit can still be read back
+   * @throws IOException if the bytes that fit can't be hidden
+   */
+  public static void testFull() throws IOException
+  {
+    Picture picture = new Picture(30,20);
+    int capacity = (int) StegoOutputStream.getCapacity(picture,1);
+    byte[] data = new byte[capacity];
+    new Random(1).nextBytes(data);
+    StegoOutputStream out = new StegoOutputStream(picture,1);
+    out.write(data);
+    try
+    {
+      out.write(0);
+      check(false,"a byte past the capacity was written");
+    }
+    catch (IOException ex)
+    {
+      // expected
+    }
+    out.close();
+    try
+    {
+      out.write(0);
+      check(false,"a byte was written after close");
+    }
+    catch (IOException ex)
+    {
+      // expected
+    }
+    check(Arrays.equals(Steganography.revealBytes(picture),data),"the bytes that fit changed");
+  }
+
+  /**
+   * Method to test that a picture without a payload isn't read as one
+   */
+  public static void testNoPayload()
+  {
+    Picture picture = RawImageFileTest.makePicture(40,30,false);
+    check(!StegoInputStream.hasPayload(picture),"a plain picture had a payload");
+    try
+    {
+      new StegoInputStream(picture).close();
+      check(false,"a stream was opened on a plain picture");
+    }
+    catch (IOException ex)
+    {
+      // expected
+    }
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws IOException if a test can't hide its bytes
+   */
+  public static void main(String[] args) throws IOException
+  {
+    testRoundTrip();
+    System.out.println("testRoundTrip passed");
+    testFull();
+    System.out.println("testFull passed");
+    testNoPayload();
+    System.out.println("testNoPayload passed");
+  }
+
+}
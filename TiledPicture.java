@@ -0,0 +1,673 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class for a picture that is kept in a raw (praw) file and only has
+ * some of its pixels in memory.  The picture is split into square
+ * tiles, and a tile is read from the file the first time one of its
+ * pixels is used.  When the tiles in memory would go over the memory
+ * budget the tile used least recently is dropped, and written back to
+ * the file first if it was changed.  So the Steganography streams (and
+ * anything else that uses the DigitalPicture pixel methods) work on
+ * pictures much bigger than the heap.
+ *
+ * Changes are only sure to be in the file after flush or close.
+ * getBufferedImage and show copy the whole picture into memory, so
+ * they are only for pictures that fit.
+ */
+public class TiledPicture implements DigitalPicture, Closeable
+{
+
+  /////////////////////////// inner types ///////////////////////////////
+
+  /**
+   * Class for one tile of pixels in memory
+   */
+  private static class Tile
+  {
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private int[] pixels;
+    private boolean dirty;
+
+    private Tile(int x, int y, int width, int height)
+    {
+      this.x = x;
+      this.y = y;
+      this.width = width;
+      this.height = height;
+      this.pixels = new int[width * height];
+    }
+  }
+
+  /////////////////////////// fields ///////////////////////////////////
+
+  /** the width and height of a tile when none is given */
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  /** the bytes of tiles to keep in memory when no budget is given */
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  /** the raw file that holds the pixels */
+  private File file;
+
+  /** the channel used to read and write the file */
+  private FileChannel channel;
+
+  /** the title of the picture */
+  private String title;
+
+  /** the width of the picture */
+  private int width;
+
+  /** the height of the picture */
+  private int height;
+
+  /** true if the pixels have alpha */
+  private boolean alpha;
+
+  /** alpha bits to add to values read from the file (all 1's for
+   * pictures without alpha) */
+  private int alphaMask;
+
+  /** the width and height of a tile */
+  private int tileSize;
+
+  /** the number of tiles in each row of tiles */
+  private int tilesAcross;
+
+  /** the most tiles to keep in memory */
+  private int maxTiles;
+
+  /** the tiles in memory by index, least recently used first */
+  private LinkedHashMap<Integer,Tile> tiles =
+    new LinkedHashMap<Integer,Tile>(16,0.75f,true);
+
+  /** a buffer for one row of a tile */
+  private ByteBuffer rowBytes;
+
+  /** the number of tiles read from the file */
+  private long tileReads;
+
+  /** the number of tiles written to the file */
+  private long tileWrites;
+
+  /////////////////////////// constructors /////////////////////////////
+
+  /**
+   * A constructor that opens a raw picture file with the default tile
+   * size and memory budget
+   * @param fileName the name of the raw (praw) file
+   * @throws IOException if the file can't be opened or isn't a raw file
+   */
+  public TiledPicture(String fileName) throws IOException
+  {
+    this(fileName,DEFAULT_TILE_SIZE,DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * A constructor that opens a raw picture file
+   * @param fileName the name of the raw (praw) file
+   * @param tileSize the width and height of a tile
+   * @param memoryBudget the most bytes of tiles to keep in memory (at
+   * least one tile is always kept)
+   * @throws IOException if the file can't be opened or isn't a raw file
+   */
+  public TiledPicture(String fileName, int tileSize, long memoryBudget)
+    throws IOException
+  {
+    if (tileSize < 1)
+      throw new IllegalArgumentException("tile size must be at least 1, not " + tileSize);
+    this.tileSize = tileSize;
+    this.maxTiles = (int) Math.max(1,Math.min(Integer.MAX_VALUE,
+                                              memoryBudget / (4L * tileSize * tileSize)));
+    this.rowBytes = ByteBuffer.allocateDirect(4 * tileSize).order(ByteOrder.LITTLE_ENDIAN);
+    open(fileName);
+  }
+
+  /////////////////////////// methods //////////////////////////////////
+
+  /**
+   * Method to make a new raw picture file and open it.  The pixels all
+   * start out as 0 (black, and clear if there is alpha).
+   * @param fileName the name of the raw (praw) file to make
+   * @param width the width of the picture
+   * @param height the height of the picture
+   * @param alpha true if the pixels have alpha
+   * @return the new picture
+   * @throws IOException if the file can't be written
+   */
+  public static TiledPicture create(String fileName, int width, int height,
+                                    boolean alpha) throws IOException
+  {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException("bad size " + width + "x" + height);
+    try (FileChannel channel = RawImageFile.create(new File(fileName),width,height,alpha))
+    {
+      // writing the last pixel makes the file full size
+      long end = RawImageFile.HEADER_BYTES + 4L * width * height;
+      channel.write(ByteBuffer.allocate(4),end - 4);
+    }
+    return new TiledPicture(fileName);
+  }
+
+  /**
+   * Method to open a raw file, after writing back and closing the file
+   * that is open now
+   * @param fileName the name of the raw file
+   * @throws IOException if the file can't be opened or isn't a raw file
+   */
+  private void open(String fileName) throws IOException
+  {
+    ImageInfo info = ImageInfo.probe(fileName);
+    if (!RawImageFile.EXTENSION.equals(info.getFormatName()))
+      throw new IOException(fileName + " is not a raw picture file");
+    long size = RawImageFile.HEADER_BYTES + 4L * info.getWidth() * info.getHeight();
+    if (info.getFile().length() < size)
+      throw new IOException(fileName + " is missing some of its pixels");
+    FileChannel next = FileChannel.open(info.getFile().toPath(),StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+    close();
+    this.channel = next;
+    this.file = info.getFile();
+    this.width = info.getWidth();
+    this.height = info.getHeight();
+    this.alpha = info.getImageType() == BufferedImage.TYPE_INT_ARGB;
+    this.alphaMask = alpha ? 0 : 0xff000000;
+    this.tilesAcross = (width + tileSize - 1) / tileSize;
+    if (title == null)
+      title = fileName;
+  }
+
+  /**
+   * Method to get a tile, reading it from the file if it isn't in
+   * memory (and dropping the least recently used tile if there is no
+   * room for it)
+   * @param tileX the tile column
+   * @param tileY the tile row
+   * @return the tile
+   */
+  private Tile getTile(int tileX, int tileY)
+  {
+    Integer key = tileY * tilesAcross + tileX;
+    Tile tile = tiles.get(key);
+    if (tile != null)
+      return tile;
+
+    Iterator<Map.Entry<Integer,Tile>> iterator = tiles.entrySet().iterator();
+    while (tiles.size() >= maxTiles && iterator.hasNext())
+    {
+      writeTile(iterator.next().getValue());
+      iterator.remove();
+    }
+
+    int x = tileX * tileSize;
+    int y = tileY * tileSize;
+    tile = new Tile(x,y,Math.min(tileSize,width - x),Math.min(tileSize,height - y));
+    try
+    {
+      for (int row = 0; row < tile.height; row++)
+      {
+        IntBuffer ints = transfer(tile,row,false);
+        ints.get(tile.pixels,row * tile.width,tile.width);
+      }
+    }
+    catch (IOException ex)
+    {
+      throw new IllegalStateException("could not read " + file,ex);
+    }
+    tileReads++;
+    tiles.put(key,tile);
+    return tile;
+  }
+
+  /**
+   * Method to write a tile back to the file if it was changed
+   * @param tile the tile
+   */
+  private void writeTile(Tile tile)
+  {
+    if (!tile.dirty)
+      return;
+    try
+    {
+      for (int row = 0; row < tile.height; row++)
+      {
+        rowBytes.clear();
+        rowBytes.asIntBuffer().put(tile.pixels,row * tile.width,tile.width);
+        transfer(tile,row,true);
+      }
+    }
+    catch (IOException ex)
+    {
+      throw new IllegalStateException("could not write " + file,ex);
+    }
+    tile.dirty = false;
+    tileWrites++;
+  }
+
+  /**
+   * Method to read or write one row of a tile using the row buffer
+   * @param tile the tile
+   * @param row the row in the tile
+   * @param write true to write the row buffer to the file, false to
+   * read the file into it
+   * @return the row buffer as ints
+   * @throws IOException if the file can't be read or written
+   */
+  private IntBuffer transfer(Tile tile, int row, boolean write) throws IOException
+  {
+    long position = RawImageFile.HEADER_BYTES +
+      4L * ((long) (tile.y + row) * width + tile.x);
+    rowBytes.clear().limit(4 * tile.width);
+    while (rowBytes.hasRemaining())
+    {
+      int n = write ? channel.write(rowBytes,position + rowBytes.position())
+                    : channel.read(rowBytes,position + rowBytes.position());
+      if (n < 0)
+        throw new IOException(file + " is missing some of its pixels");
+    }
+    rowBytes.flip();
+    return rowBytes.asIntBuffer();
+  }
+
+  /**
+   * Method to write all of the changed tiles back to the file
+   */
+  public synchronized void flush()
+  {
+    if (channel == null)
+      return;
+    for (Tile tile : tiles.values())
+      writeTile(tile);
+  }
+
+  /**
+   * Method to write the changed tiles back to the file and close it
+   * @throws IOException if the file can't be closed
+   */
+  public synchronized void close() throws IOException
+  {
+    if (channel == null)
+      return;
+    flush();
+    tiles.clear();
+    channel.close();
+    channel = null;
+  }
+
+  /**
+   * Method to check that a rectangle is inside of this picture
+   * @param x the x coordinate of the left side of the rectangle
+   * @param y the y coordinate of the top of the rectangle
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   */
+  private void checkBounds(int x, int y, int width, int height)
+  {
+    if (x < 0 || y < 0 || width < 0 || height < 0 ||
+        x + width > this.width || y + height > this.height)
+      throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+    if (channel == null)
+      throw new IllegalStateException(file + " is closed");
+  }
+
+  /**
+   * Method to get the file name of the raw file
+   * @return the path of the file the pixels are kept in
+   */
+  public String getFileName() { return (file == null) ? null : file.getPath(); }
+
+  /**
+   * Method to get the title of the picture
+   * @return the title of the picture
+   */
+  public String getTitle() { return title; }
+
+  /**
+   * Method to set the title for the picture
+   * @param title the title to use for the picture
+   */
+  public void setTitle(String title) { this.title = title; }
+
+  /**
+   * Method to get the width of the picture in pixels
+   * @return the width of the picture in pixels
+   */
+  public int getWidth() { return width; }
+
+  /**
+   * Method to get the height of the picture in pixels
+   * @return the height of the picture in pixels
+   */
+  public int getHeight() { return height; }
+
+  /**
+   * Method to tell if this picture stores alpha (transparency)
+   * @return true if the pixels have their own alpha values
+   */
+  public boolean hasAlpha() { return alpha; }
+
+  /**
+   * Method to get the width and height of a tile
+   * @return the tile size
+   */
+  public int getTileSize() { return tileSize; }
+
+  /**
+   * Method to get the most tiles that are kept in memory
+   * @return the number of tiles that fit in the memory budget
+   */
+  public int getMaxTiles() { return maxTiles; }
+
+  /**
+   * Method to get the number of tiles in memory now
+   * @return the number of tiles in memory
+   */
+  public synchronized int getTileCount() { return tiles.size(); }
+
+  /**
+   * Method to get the number of times a tile was read from the file
+   * @return the number of tile reads
+   */
+  public synchronized long getTileReads() { return tileReads; }
+
+  /**
+   * Method to get the number of times a changed tile was written back
+   * @return the number of tile writes
+   */
+  public synchronized long getTileWrites() { return tileWrites; }
+
+  /**
+   * Method to return the pixel value as an int for the given x and y location
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @return the pixel value as an integer (alpha, red, green, blue)
+   */
+  public synchronized int getBasicPixel(int x, int y)
+  {
+    checkBounds(x,y,1,1);
+    Tile tile = getTile(x / tileSize,y / tileSize);
+    return tile.pixels[(y - tile.y) * tile.width + x - tile.x] | alphaMask;
+  }
+
+  /**
+   * Method to set the value of a pixel in the picture from an int
+   * @param x the x coordinate of the pixel
+   * @param y the y coordinate of the pixel
+   * @param rgb the new rgb value of the pixel (alpha, red, green, blue)
+   */
+  public synchronized void setBasicPixel(int x, int y, int rgb)
+  {
+    checkBounds(x,y,1,1);
+    Tile tile = getTile(x / tileSize,y / tileSize);
+    tile.pixels[(y - tile.y) * tile.width + x - tile.x] = rgb & ~alphaMask;
+    tile.dirty = true;
+  }
+
+  /**
+   * Method to get a rectangle of pixel values as packed ints in
+   * row-major order starting at index 0 of the buffer
+   * @param x the x coordinate of the left side of the rectangle
+   * @param y the y coordinate of the top of the rectangle
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   * @param buffer the array to fill (may be null, or too small, in which
+   * case a new array is created)
+   * @return the array holding the pixel values
+   */
+  public synchronized int[] getBasicPixels(int x, int y, int width, int height,
+                                           int[] buffer)
+  {
+    if (buffer == null || buffer.length < width * height)
+      buffer = new int[width * height];
+    checkBounds(x,y,width,height);
+    for (int row = 0; row < height; row++)
+    {
+      int to = row * width;
+      for (int col = x; col < x + width; )
+      {
+        Tile tile = getTile(col / tileSize,(y + row) / tileSize);
+        int n = Math.min(x + width,tile.x + tile.width) - col;
+        System.arraycopy(tile.pixels,(y + row - tile.y) * tile.width + col - tile.x,
+                         buffer,to + col - x,n);
+        col += n;
+      }
+      if (alphaMask != 0)
+        for (int i = to; i < to + width; i++)
+          buffer[i] |= alphaMask;
+    }
+    return buffer;
+  }
+
+  /**
+   * Method to set a rectangle of pixel values from packed ints in
+   * row-major order starting at index 0 of the passed array
+   * @param x the x coordinate of the left side of the rectangle
+   * @param y the y coordinate of the top of the rectangle
+   * @param width the width of the rectangle
+   * @param height the height of the rectangle
+   * @param pixels the new pixel values (alpha, red, green, blue)
+   */
+  public synchronized void setBasicPixels(int x, int y, int width, int height,
+                                          int[] pixels)
+  {
+    checkBounds(x,y,width,height);
+    int keep = ~alphaMask;
+    for (int row = 0; row < height; row++)
+    {
+      int from = row * width;
+      for (int col = x; col < x + width; )
+      {
+        Tile tile = getTile(col / tileSize,(y + row) / tileSize);
+        int n = Math.min(x + width,tile.x + tile.width) - col;
+        int to = (y + row - tile.y) * tile.width + col - tile.x;
+        for (int i = 0; i < n; i++)
+          tile.pixels[to + i] = pixels[from + col - x + i] & keep;
+        tile.dirty = true;
+        col += n;
+      }
+    }
+  }
+
+  /**
+   * Method to get one row of pixel values as packed ints
+   * @param y the row to get
+   * @param buffer the array to fill (may be null)
+   * @return the array holding the row's pixel values
+   */
+  public int[] getBasicRow(int y, int[] buffer)
+  {
+    return getBasicPixels(0,y,width,1,buffer);
+  }
+
+  /**
+   * Method to set one row of pixel values from packed ints
+   * @param y the row to set
+   * @param pixels the new pixel values for the row
+   */
+  public void setBasicRow(int y, int[] pixels)
+  {
+    setBasicPixels(0,y,width,1,pixels);
+  }
+
+  /**
+   * Method to get a pixel object for the given x and y location
+   * @param x the x location of the pixel in the picture
+   * @param y the y location of the pixel in the picture
+   * @return a Pixel object for this location
+   */
+  public Pixel getPixel(int x, int y)
+  {
+    return new Pixel(this,x,y);
+  }
+
+  /**
+   * Method to get a one-dimensional array of Pixels for this picture
+   * @return a one-dimensional array of Pixel objects in row-major order
+   */
+  public Pixel[] getPixels()
+  {
+    Pixel[] pixelArray = new Pixel[Math.multiplyExact(width,height)];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row * width + col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to get a two-dimensional array of Pixels for this picture
+   * @return a two-dimensional array of Pixel objects in row-major order
+   */
+  public Pixel[][] getPixels2D()
+  {
+    Pixel[][] pixelArray = new Pixel[height][width];
+    for (int row = 0; row < height; row++)
+      for (int col = 0; col < width; col++)
+        pixelArray[row][col] = new Pixel(this,col,row);
+    return pixelArray;
+  }
+
+  /**
+   * Method to copy the whole picture into a buffered image.  This
+   * needs the whole picture in memory.
+   * @return a new buffered image with the pixels of this picture
+   */
+  public BufferedImage getBufferedImage()
+  {
+    BufferedImage image = new BufferedImage(width,height,alpha ? BufferedImage.TYPE_INT_ARGB
+                                                                : BufferedImage.TYPE_INT_RGB);
+    int[] pixels = new int[width];
+    for (int row = 0; row < height; row++)
+      image.setRGB(0,row,width,1,getBasicRow(row,pixels),0,width);
+    return image;
+  }
+
+  /**
+   * Method to get an image from the picture (a copy of the whole
+   * picture, see getBufferedImage)
+   * @return the buffered image since it is an image
+   */
+  public Image getImage()
+  {
+    return getBufferedImage();
+  }
+
+  /**
+   * Method to draw an image onto the top left of this picture (only the
+   * part the image covers is copied into memory)
+   * @param image the image to use
+   */
+  public void load(Image image)
+  {
+    int w = Math.min(width,image.getWidth(null));
+    int h = Math.min(height,image.getHeight(null));
+    if (w <= 0 || h <= 0)
+      return;
+    BufferedImage copy = new BufferedImage(w,h,BufferedImage.TYPE_INT_ARGB);
+    copy.setRGB(0,0,w,h,getBasicPixels(0,0,w,h,null),0,w);
+    Graphics2D graphics2d = copy.createGraphics();
+    graphics2d.drawImage(image,0,0,null);
+    graphics2d.dispose();
+    int[] pixels = new int[w];
+    for (int row = 0; row < h; row++)
+      setBasicPixels(0,row,w,1,copy.getRGB(0,row,w,1,pixels,0,w));
+  }
+
+  /**
+   * Method to open a different raw file (the changes to the current
+   * one are written back first)
+   * @param fileName the name of the raw file
+   * @return true if success else false
+   */
+  public synchronized boolean load(String fileName)
+  {
+    try
+    {
+      open(fileName);
+      return true;
+    }
+    catch (IOException ex)
+    {
+      System.out.println("There was an error trying to open " + fileName);
+      return false;
+    }
+  }
+
+  /**
+   * Method to show a copy of the picture in a picture frame
+   */
+  public void show()
+  {
+    Picture copy = new Picture(getBufferedImage());
+    copy.setTitle(title);
+    copy.show();
+  }
+
+  /**
+   * Method to open a picture explorer on a copy of this picture
+   */
+  public void explore()
+  {
+    Picture copy = new Picture(getBufferedImage());
+    copy.setTitle(title);
+    copy.explore();
+  }
+
+  /**
+   * Method to write the picture to a file a band of tile rows at a
+   * time (see BandedImage).  Writing to the raw file this picture is
+   * kept in just flushes it.
+   * @param fileName the name of the file to write the picture to
+   * @return true if success else false
+   */
+  public boolean write(String fileName)
+  {
+    try
+    {
+      flush();
+      File target = new File(fileName);
+      if (target.exists() && target.getCanonicalPath().equals(file.getCanonicalPath()))
+        return true;
+      BandedImage image = new BandedImage(width,height,tileSize,alpha,(startRow, rows) -> {
+        Picture band = new Picture(new BufferedImage(width,rows,alpha ? BufferedImage.TYPE_INT_ARGB
+                                                                      : BufferedImage.TYPE_INT_RGB));
+        band.setBasicPixels(0,0,width,rows,getBasicPixels(0,startRow,width,rows,null));
+        return band;
+      });
+      image.write(target);
+      return true;
+    }
+    catch (Exception ex)
+    {
+      System.out.println("There was an error trying to write " + fileName);
+      ex.printStackTrace();
+      return false;
+    }
+  }
+
+  /**
+   * Method to return a string with information about this picture
+   * @return a string with the file name, size, and tiles in memory
+   */
+  public synchronized String toString()
+  {
+    return "Tiled Picture, filename " + getFileName() + " height " + height +
+      " width " + width + " tiles " + tiles.size() + " of " + maxTiles;
+  }
+
+}
@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class that tests keeping a picture in a raw file and paging it in a
+ * tile at a time with TiledPicture.  Run it like any other class:
+ * <pre>
+ *   java TiledPictureTest
+ * </pre>
+ * It prints the name of each test as it passes and stops with an
+ * AssertionError at the first one that fails.  The files are made in
+ * a new temporary directory that is deleted at the end.
+ */
+public class TiledPictureTest
+{
+
+  /** the directory the test files are made in */
+  private static File dir;
+
+  /////////////////////////// helpers //////////////////////////////////
+
+  /**
+   * Method to stop the test if something isn't true
+   * @param ok the thing that should be true
+   * @param message what went wrong if it isn't
+   */
+  private static void check(boolean ok, String message)
+  {
+    if (!ok)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Method to get the path of a test file
+   * @param name the name of the file
+   * @return the path in the test directory
+   */
+  private static String path(String name)
+  {
+    return new File(dir,name).getPath();
+  }
+
+  /**
+   * Method to get the color the tests put at a location
+   * @param x the x coordinate
+   * @param y the y coordinate
+   * @return the color for that location
+   */
+  private static int colorAt(int x, int y)
+  {
+    return (x * 131 + y * 7919) & 0xffffff;
+  }
+
+  /////////////////////////// tests ////////////////////////////////////
+
+  /**
+   * Method to test that pixels set with room for only a few tiles are
+   * written back as tiles are dropped, and are in the file when it is
+   * opened again
+   * @throws IOException if the test file can't be made or read
+   */
+  public static void testCreateAndReopen() throws IOException
+  {
+    String name = path("tiles.praw");
+    TiledPicture.create(name,100,70,false).close();
+    // 16x16 tiles and room for 2 of them
+    TiledPicture picture = new TiledPicture(name,16,2 * 4 * 16 * 16);
+    check(picture.getMaxTiles() == 2,"the memory budget wasn't used");
+    for (int y = 0; y < 70; y++)
+      for (int x = 0; x < 100; x++)
+        picture.setBasicPixel(x,y,colorAt(x,y));
+    check(picture.getTileCount() <= 2,"more tiles than the budget were kept");
+    check(picture.getTileWrites() > 0,"no tiles were written back");
+
+    // a run that crosses tiles
+    int[] run = picture.getBasicPixels(10,20,50,30,null);
+    for (int y = 0; y < 30; y++)
+      for (int x = 0; x < 50; x++)
+        check((run[y * 50 + x] & 0xffffff) == colorAt(10 + x,20 + y),
+              "the run is wrong at " + (10 + x) + "," + (20 + y));
+    picture.close();
+    try
+    {
+      picture.getBasicPixel(0,0);
+      check(false,"a closed picture was read");
+    }
+    catch (IllegalStateException ex)
+    {
+      // expected
+    }
+
+    Picture read = new Picture(name);
+    for (int y = 0; y < 70; y++)
+      for (int x = 0; x < 100; x++)
+        check((read.getBasicPixel(x,y) & 0xffffff) == colorAt(x,y),
+              "the file is wrong at " + x + "," + y);
+  }
+
+  /**
+   * Method to test writing a tiled picture to a png file, and writing
+   * it to its own file
+   * @throws IOException if a test file can't be made or read
+   */
+  public static void testWrite() throws IOException
+  {
+    String name = path("write.praw");
+    TiledPicture picture = TiledPicture.create(name,40,90,true);
+    for (int y = 0; y < 90; y++)
+      for (int x = 0; x < 40; x++)
+        picture.setBasicPixel(x,y,0x80000000 | colorAt(x,y));
+    check(picture.write(path("write.png")),"the png wasn't written");
+    check(picture.write(name),"the picture wasn't written to its own file");
+    picture.close();
+    Picture png = new Picture(path("write.png"));
+    check(RawImageFileTest.samePixels(png,new Picture(name)),"the png and raw file differ");
+    check(png.getBasicPixel(3,4) == (0x80000000 | colorAt(3,4)),"the png lost a pixel");
+  }
+
+  /**
+   * Method to test hiding bytes in a tiled picture in place
+   * @throws IOException if the test file can't be made
+   */
+  public static void testHideInPlace() throws IOException
+  {
+    TiledPicture picture = TiledPicture.create(path("hide.praw"),120,80,false);
+    try
+    {
+      byte[] data = new byte[Steganography.getByteCapacity(picture,4)];
+      new Random(22).nextBytes(data);
+      Steganography.hideBytesInPlace(picture,data,4);
+      check(Arrays.equals(Steganography.revealBytes(picture),data),"the bytes changed");
+    }
+    finally
+    {
+      picture.close();
+    }
+  }
+
+  /**
+   * Main method to run the tests
+   * @param args not used
+   * @throws IOException if a test file can't be made
+   */
+  public static void main(String[] args) throws IOException
+  {
+    dir = Files.createTempDirectory("tiles").toFile();
+    try
+    {
+      testCreateAndReopen();
+      System.out.println("testCreateAndReopen passed");
+      testWrite();
+      System.out.println("testWrite passed");
+      testHideInPlace();
+      System.out.println("testHideInPlace passed");
+    }
+    finally
+    {
+      for (File file : dir.listFiles())
+        file.delete();
+      dir.delete();
+    }
+  }
+
+}
@@ -0,0 +1,116 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Class with the LowBits loops written with the Vector API, so that
+ * each step works on as many pixels as fit in a vector register (16
+ * with AVX-512).  The JIT already vectorizes the plain loops that work
+ * on one array, or on two arrays at the same index, and those run at
+ * the speed of memory, so they are used as is.  The loops here are for
+ * two arrays at different indexes (like the codes the stego streams
+ * hide), which the JIT leaves as one pixel at a time.
+ *
+ * This needs the jdk.incubator.vector module, so it is kept out of the
+ * main directory and compiled on its own:
+ * <pre>
+ *   javac --add-modules jdk.incubator.vector -d . vector/LowBitsVector.java
+ * </pre>
+ * LowBits uses it when it is found and the program is run with
+ * --add-modules jdk.incubator.vector.
+ */
+public class LowBitsVector extends LowBits.ScalarLoops
+{
+
+  /** the widest vector shape the processor handles well */
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  /**
+   * Method to put the high bits of the secret into the low bits of the
+   * pixels
+   */
+  public void setHigh(int[] pixels, int from, int to, int[] secret,
+                      int secretFrom, int mask, int shift)
+  {
+    if (secretFrom == from)
+    {
+      super.setHigh(pixels,from,to,secret,secretFrom,mask,shift);
+      return;
+    }
+    int i = from;
+    int j = secretFrom;
+    for (int upper = from + SPECIES.loopBound(to - from); i < upper;
+         i += SPECIES.length(), j += SPECIES.length())
+    {
+      IntVector high = IntVector.fromArray(SPECIES,secret,j)
+        .lanewise(VectorOperators.ASHR,shift).and(mask);
+      IntVector.fromArray(SPECIES,pixels,i).and(~mask).or(high).intoArray(pixels,i);
+    }
+    for (; i < to; i++, j++)
+      pixels[i] = (pixels[i] & ~mask) | ((secret[j] >> shift) & mask);
+  }
+
+  /**
+   * Method to spread codes over the low bits of red, green, and blue
+   */
+  public void setCodes(int[] pixels, int from, int to, int[] codes,
+                       int codesFrom, int depth)
+  {
+    if (codesFrom == from)
+    {
+      super.setCodes(pixels,from,to,codes,codesFrom,depth);
+      return;
+    }
+    int bits = (1 << depth) - 1;
+    int mask = (bits << 16) | (bits << 8) | bits;
+    int i = from;
+    int j = codesFrom;
+    for (int upper = from + SPECIES.loopBound(to - from); i < upper;
+         i += SPECIES.length(), j += SPECIES.length())
+    {
+      IntVector code = IntVector.fromArray(SPECIES,codes,j);
+      IntVector spread = code.and(bits).lanewise(VectorOperators.LSHL,16)
+        .or(code.lanewise(VectorOperators.ASHR,depth).and(bits).lanewise(VectorOperators.LSHL,8))
+        .or(code.lanewise(VectorOperators.ASHR,2 * depth).and(bits));
+      IntVector.fromArray(SPECIES,pixels,i).and(~mask).or(spread).intoArray(pixels,i);
+    }
+    for (; i < to; i++, j++)
+    {
+      int code = codes[j];
+      pixels[i] = (pixels[i] & ~mask) | ((code & bits) << 16) |
+        (((code >> depth) & bits) << 8) | ((code >> (2 * depth)) & bits);
+    }
+  }
+
+  /**
+   * Method to gather codes from the low bits of red, green, and blue
+   */
+  public void getCodes(int[] pixels, int from, int to, int[] codes,
+                       int codesFrom, int depth)
+  {
+    if (codesFrom == from)
+    {
+      super.getCodes(pixels,from,to,codes,codesFrom,depth);
+      return;
+    }
+    int bits = (1 << depth) - 1;
+    int i = from;
+    int j = codesFrom;
+    for (int upper = from + SPECIES.loopBound(to - from); i < upper;
+         i += SPECIES.length(), j += SPECIES.length())
+    {
+      IntVector value = IntVector.fromArray(SPECIES,pixels,i);
+      value.lanewise(VectorOperators.ASHR,16).and(bits)
+        .or(value.lanewise(VectorOperators.ASHR,8).and(bits).lanewise(VectorOperators.LSHL,depth))
+        .or(value.and(bits).lanewise(VectorOperators.LSHL,2 * depth))
+        .intoArray(codes,j);
+    }
+    for (; i < to; i++, j++)
+    {
+      int value = pixels[i];
+      codes[j] = ((value >> 16) & bits) | (((value >> 8) & bits) << depth) |
+        ((value & bits) << (2 * depth));
+    }
+  }
+
+}